@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+/**
+ * Single precision counterpart of {@link Matrix}: dense row-major storage in one {@code float[]}, with
+ * element (i, j) at {@code offset + i * rowStride + j}.
+ */
+public class FloatMatrix {
+
+	private final float[] mData;
+	private final int mOffset;
+	private final int mRows;
+	private final int mColumns;
+	private final int mRowStride;
+
+	public FloatMatrix(final int rows, final int columns) {
+		this(new float[checkSize(rows, columns)], 0, rows, columns, columns);
+	}
+
+	public FloatMatrix(final float[] data, final int offset, final int rows, final int columns, final int rowStride) {
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Matrix dimensions must be greater than zero");
+		}
+		if (rowStride < columns) {
+			throw new IllegalArgumentException("Row stride is less than columns number");
+		}
+		if (offset < 0 || offset + (rows - 1) * rowStride + columns > data.length) {
+			throw new IllegalArgumentException("Matrix does not fit backing array");
+		}
+
+		mData = data;
+		mOffset = offset;
+		mRows = rows;
+		mColumns = columns;
+		mRowStride = rowStride;
+	}
+
+	public static FloatMatrix fromMatrix(final Matrix a) {
+		final FloatMatrix matrix = new FloatMatrix(a.getRows(), a.getColumns());
+
+		for (int i = 0; i < a.getRows(); i++) {
+			for (int j = 0; j < a.getColumns(); j++) {
+				matrix.set(i, j, (float) a.get(i, j));
+			}
+		}
+
+		return matrix;
+	}
+
+	public float get(final int i, final int j) {
+		return mData[mOffset + i * mRowStride + j];
+	}
+
+	public void set(final int i, final int j, final float value) {
+		mData[mOffset + i * mRowStride + j] = value;
+	}
+
+	public int index(final int i, final int j) {
+		return mOffset + i * mRowStride + j;
+	}
+
+	public float[] getData() {
+		return mData;
+	}
+
+	public int getOffset() {
+		return mOffset;
+	}
+
+	public int getRows() {
+		return mRows;
+	}
+
+	public int getColumns() {
+		return mColumns;
+	}
+
+	public int getRowStride() {
+		return mRowStride;
+	}
+
+	public FloatMatrix view(final int rowOffset, final int columnOffset, final int rows, final int columns) {
+		if (rowOffset < 0 || columnOffset < 0 || rowOffset + rows > mRows || columnOffset + columns > mColumns) {
+			throw new IllegalArgumentException("View is out of matrix bounds");
+		}
+
+		return new FloatMatrix(mData, index(rowOffset, columnOffset), rows, columns, mRowStride);
+	}
+
+	public FloatMatrix copy() {
+		final FloatMatrix matrix = new FloatMatrix(mRows, mColumns);
+
+		for (int i = 0; i < mRows; i++) {
+			System.arraycopy(mData, index(i, 0), matrix.mData, matrix.index(i, 0), mColumns);
+		}
+
+		return matrix;
+	}
+
+	public Matrix toMatrix() {
+		final Matrix matrix = new Matrix(mRows, mColumns);
+
+		for (int i = 0; i < mRows; i++) {
+			for (int j = 0; j < mColumns; j++) {
+				matrix.set(i, j, get(i, j));
+			}
+		}
+
+		return matrix;
+	}
+
+	private static int checkSize(final int rows, final int columns) {
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Matrix dimensions must be greater than zero");
+		}
+
+		return rows * columns;
+	}
+}
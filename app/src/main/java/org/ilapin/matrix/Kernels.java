@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+/**
+ * Element-wise and reduction kernels used by the hot loops of the matrix package and the neural networks.
+ * Two implementations exist: {@link ScalarKernels}, the plain reference loops, and {@link UnrolledKernels},
+ * which splits reductions over several independent lanes so the JIT can keep them in vector registers.
+ * The implementation is picked once, from the {@value #KERNELS_PROPERTY} system property ("scalar" or
+ * "unrolled"), defaulting to the unrolled one.
+ */
+public abstract class Kernels {
+
+	public static final String KERNELS_PROPERTY = "org.ilapin.matrix.kernels";
+
+	private static final Kernels sDefault = create(System.getProperty(KERNELS_PROPERTY));
+
+	public static Kernels getDefault() {
+		return sDefault;
+	}
+
+	static Kernels create(final String name) {
+		if ("scalar".equals(name)) {
+			return new ScalarKernels();
+		} else {
+			return new UnrolledKernels();
+		}
+	}
+
+	/**
+	 * Sum of a[aOffset + i] * b[bOffset + i] over i in [0, length).
+	 */
+	public abstract double dot(final double[] a, final int aOffset,
+							   final double[] b, final int bOffset,
+							   final int length);
+
+	/**
+	 * Sum of w[wOffset + i] * x[indexes[i]] over all indexes.
+	 */
+	public abstract double gatherDot(final double[] w, final int wOffset,
+									 final double[] x, final int[] indexes);
+
+	/**
+	 * c = a + b, element-wise.
+	 */
+	public void add(final double[] a, final int aOffset,
+					final double[] b, final int bOffset,
+					final double[] c, final int cOffset,
+					final int length) {
+		for (int i = 0; i < length; i++) {
+			c[cOffset + i] = a[aOffset + i] + b[bOffset + i];
+		}
+	}
+
+	/**
+	 * y += alpha * x, element-wise.
+	 */
+	public void axpy(final double alpha,
+					 final double[] x, final int xOffset,
+					 final double[] y, final int yOffset,
+					 final int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	/**
+	 * y = (x - offsets) * gain + yMin, element-wise.
+	 */
+	public void minMax(final double[] x, final int xOffset,
+					   final double[] gain, final double[] offsets, final double yMin,
+					   final double[] y, final int yOffset,
+					   final int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] = (x[xOffset + i] - offsets[i]) * gain[i] + yMin;
+		}
+	}
+
+	/**
+	 * Tanh-sigmoid, 2 / (1 + exp(-2x)) - 1, of a single value.
+	 */
+	public static double tanhSigmoid(final double x) {
+		return 2.0 / (1 + Math.exp(-2 * x)) - 1;
+	}
+
+	/**
+	 * In place {@link #tanhSigmoid(double)}.
+	 */
+	public void tanhSigmoid(final double[] x, final int offset, final int length) {
+		for (int i = offset; i < offset + length; i++) {
+			x[i] = tanhSigmoid(x[i]);
+		}
+	}
+
+	/**
+	 * Single precision {@link #tanhSigmoid(double[], int, int)}, evaluated in double.
+	 */
+	public void tanhSigmoid(final float[] x, final int offset, final int length) {
+		for (int i = offset; i < offset + length; i++) {
+			x[i] = (float) tanhSigmoid(x[i]);
+		}
+	}
+
+	/**
+	 * Softmax of x written to y; x and y may be the same region.
+	 */
+	public void softMax(final double[] x, final int xOffset,
+						final double[] y, final int yOffset,
+						final int length) {
+		double maxValue = x[xOffset];
+		for (int i = 1; i < length; i++) {
+			maxValue = Math.max(maxValue, x[xOffset + i]);
+		}
+
+		double denominator = 0;
+		for (int i = 0; i < length; i++) {
+			final double numerator = Math.exp(x[xOffset + i] - maxValue);
+			y[yOffset + i] = numerator;
+			denominator += numerator;
+		}
+		if (denominator == 0) {
+			denominator = 1;
+		}
+
+		final double reciprocal = 1 / denominator;
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] *= reciprocal;
+		}
+	}
+
+	/**
+	 * Single precision {@link #softMax(double[], int, double[], int, int)}.
+	 */
+	public void softMax(final float[] x, final int xOffset,
+						final float[] y, final int yOffset,
+						final int length) {
+		float maxValue = x[xOffset];
+		for (int i = 1; i < length; i++) {
+			maxValue = Math.max(maxValue, x[xOffset + i]);
+		}
+
+		float denominator = 0;
+		for (int i = 0; i < length; i++) {
+			final float numerator = (float) Math.exp(x[xOffset + i] - maxValue);
+			y[yOffset + i] = numerator;
+			denominator += numerator;
+		}
+		if (denominator == 0) {
+			denominator = 1;
+		}
+
+		final float reciprocal = 1 / denominator;
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] *= reciprocal;
+		}
+	}
+
+	/**
+	 * y = A * x for contiguous x and y, one {@link #dot} per row of A.
+	 */
+	public void matrixVectorMultiply(final Matrix a,
+									 final double[] x, final int xOffset,
+									 final double[] y, final int yOffset) {
+		final double[] aData = a.getData();
+		final int columns = a.getColumns();
+
+		for (int i = 0; i < a.getRows(); i++) {
+			y[yOffset + i] = dot(aData, a.index(i, 0), x, xOffset, columns);
+		}
+	}
+
+	/**
+	 * y = A * x for a sparse A and contiguous x and y, one sparse dot product per row of A.
+	 */
+	public void matrixVectorMultiply(final SparseMatrix a,
+									 final double[] x, final int xOffset,
+									 final double[] y, final int yOffset) {
+		final int[] rowStarts = a.getRowStarts();
+		final int[] columnIndexes = a.getColumnIndexes();
+		final double[] values = a.getValues();
+
+		for (int i = 0; i < a.getRows(); i++) {
+			double sum = 0;
+			for (int p = rowStarts[i]; p < rowStarts[i + 1]; p++) {
+				sum += values[p] * x[xOffset + columnIndexes[p]];
+			}
+			y[yOffset + i] = sum;
+		}
+	}
+}
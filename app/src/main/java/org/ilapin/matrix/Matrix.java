@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+/**
+ * Dense row-major matrix backed by a single {@code double[]}. Element (i, j) lives at
+ * {@code offset + i * rowStride + j}, so a matrix can also be a view into a bigger one.
+ */
+public class Matrix {
+
+	private final double[] mData;
+	private final int mOffset;
+	private final int mRows;
+	private final int mColumns;
+	private final int mRowStride;
+
+	public Matrix(final int rows, final int columns) {
+		this(new double[checkSize(rows, columns)], 0, rows, columns, columns);
+	}
+
+	public Matrix(final double[] data, final int offset, final int rows, final int columns, final int rowStride) {
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Matrix dimensions must be greater than zero");
+		}
+		if (rowStride < columns) {
+			throw new IllegalArgumentException("Row stride is less than columns number");
+		}
+		if (offset < 0 || offset + (rows - 1) * rowStride + columns > data.length) {
+			throw new IllegalArgumentException("Matrix does not fit backing array");
+		}
+
+		mData = data;
+		mOffset = offset;
+		mRows = rows;
+		mColumns = columns;
+		mRowStride = rowStride;
+	}
+
+	public static Matrix fromArray(final double[][] a) {
+		final Matrix matrix = new Matrix(a.length, a[0].length);
+
+		for (int i = 0; i < a.length; i++) {
+			System.arraycopy(a[i], 0, matrix.mData, i * matrix.mRowStride, matrix.mColumns);
+		}
+
+		return matrix;
+	}
+
+	public static Matrix columnVector(final double[] a) {
+		final Matrix matrix = new Matrix(a.length, 1);
+		System.arraycopy(a, 0, matrix.mData, 0, a.length);
+		return matrix;
+	}
+
+	public double get(final int i, final int j) {
+		return mData[mOffset + i * mRowStride + j];
+	}
+
+	public void set(final int i, final int j, final double value) {
+		mData[mOffset + i * mRowStride + j] = value;
+	}
+
+	public int index(final int i, final int j) {
+		return mOffset + i * mRowStride + j;
+	}
+
+	public double[] getData() {
+		return mData;
+	}
+
+	public int getOffset() {
+		return mOffset;
+	}
+
+	public int getRows() {
+		return mRows;
+	}
+
+	public int getColumns() {
+		return mColumns;
+	}
+
+	public int getRowStride() {
+		return mRowStride;
+	}
+
+	public boolean isContiguous() {
+		return mRowStride == mColumns;
+	}
+
+	public boolean isVector() {
+		return mRows == 1 || mColumns == 1;
+	}
+
+	public Matrix view(final int rowOffset, final int columnOffset, final int rows, final int columns) {
+		if (rowOffset < 0 || columnOffset < 0 || rowOffset + rows > mRows || columnOffset + columns > mColumns) {
+			throw new IllegalArgumentException("View is out of matrix bounds");
+		}
+
+		return new Matrix(mData, index(rowOffset, columnOffset), rows, columns, mRowStride);
+	}
+
+	public Vector row(final int i) {
+		return new Vector(mData, index(i, 0), mColumns, 1);
+	}
+
+	public Vector column(final int j) {
+		return new Vector(mData, index(0, j), mRows, mRowStride);
+	}
+
+	/**
+	 * Row or column vector as a {@link Vector} sharing this matrix's storage.
+	 */
+	public Vector asVector() {
+		if (mRows == 1) {
+			return row(0);
+		} else if (mColumns == 1) {
+			return column(0);
+		} else {
+			throw new IllegalArgumentException("Matrix is neither row nor column vector");
+		}
+	}
+
+	public void fill(final double value) {
+		for (int i = 0; i < mRows; i++) {
+			final int rowStart = index(i, 0);
+			for (int j = 0; j < mColumns; j++) {
+				mData[rowStart + j] = value;
+			}
+		}
+	}
+
+	public void copyTo(final Matrix dst) {
+		if (dst.mRows != mRows || dst.mColumns != mColumns) {
+			throw new IllegalArgumentException("Destination matrix has different dimensions");
+		}
+
+		if (isContiguous() && dst.isContiguous()) {
+			System.arraycopy(mData, mOffset, dst.mData, dst.mOffset, mRows * mColumns);
+		} else {
+			for (int i = 0; i < mRows; i++) {
+				System.arraycopy(mData, index(i, 0), dst.mData, dst.index(i, 0), mColumns);
+			}
+		}
+	}
+
+	public Matrix copy() {
+		final Matrix matrix = new Matrix(mRows, mColumns);
+		copyTo(matrix);
+		return matrix;
+	}
+
+	public double[][] toArray() {
+		final double[][] a = new double[mRows][mColumns];
+
+		for (int i = 0; i < mRows; i++) {
+			System.arraycopy(mData, index(i, 0), a[i], 0, mColumns);
+		}
+
+		return a;
+	}
+
+	private static int checkSize(final int rows, final int columns) {
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Matrix dimensions must be greater than zero");
+		}
+
+		return rows * columns;
+	}
+}
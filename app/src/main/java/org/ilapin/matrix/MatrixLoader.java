@@ -19,6 +19,9 @@ import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 
 public class MatrixLoader {
 
@@ -37,4 +40,77 @@ public class MatrixLoader {
 
 		return matrix;
 	}
+
+	public static Matrix loadMatrix(final InputStream inputStream) throws IOException {
+		final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+
+		final int rows = dataInputStream.readInt();
+		final int columns = dataInputStream.readInt();
+		final Matrix matrix = new Matrix(rows, columns);
+		final double[] data = matrix.getData();
+
+		// file is column-major, matrix is row-major
+		for (int j = 0; j < columns; j++) {
+			for (int i = 0; i < rows; i++) {
+				data[i * columns + j] = dataInputStream.readDouble();
+			}
+		}
+
+		return matrix;
+	}
+
+	/**
+	 * Same result as {@link #loadMatrix(InputStream)}, but reads the payload in bulk, a band of columns at a
+	 * time, decodes it through a big-endian {@link DoubleBuffer} view and transposes each band tile by tile
+	 * straight into the matrix. Besides the matrix only one band is held in memory.
+	 */
+	public static Matrix loadMatrixBulk(final InputStream inputStream) throws IOException {
+		final DataInputStream dataInputStream = new DataInputStream(inputStream);
+
+		final int rows = dataInputStream.readInt();
+		final int columns = dataInputStream.readInt();
+		final Matrix matrix = new Matrix(rows, columns);
+		final double[] data = matrix.getData();
+
+		final int bandColumns = Math.min(MatrixUtils.TRANSPOSE_BLOCK_SIZE, columns);
+		final byte[] bytes = new byte[rows * bandColumns * 8];
+		final DoubleBuffer band = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer();
+
+		// file is column-major, matrix is row-major
+		for (int jj = 0; jj < columns; jj += bandColumns) {
+			final int jEnd = Math.min(jj + bandColumns, columns);
+			dataInputStream.readFully(bytes, 0, rows * (jEnd - jj) * 8);
+			for (int ii = 0; ii < rows; ii += MatrixUtils.TRANSPOSE_BLOCK_SIZE) {
+				final int iEnd = Math.min(ii + MatrixUtils.TRANSPOSE_BLOCK_SIZE, rows);
+				for (int i = ii; i < iEnd; i++) {
+					final int row = i * columns;
+					int bandIndex = i;
+					for (int j = jj; j < jEnd; j++) {
+						data[row + j] = band.get(bandIndex);
+						bandIndex += rows;
+					}
+				}
+			}
+		}
+
+		return matrix;
+	}
+
+	public static FloatMatrix loadFloatMatrix(final InputStream inputStream) throws IOException {
+		final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+
+		final int rows = dataInputStream.readInt();
+		final int columns = dataInputStream.readInt();
+		final FloatMatrix matrix = new FloatMatrix(rows, columns);
+		final float[] data = matrix.getData();
+
+		// file is column-major doubles, matrix is row-major floats
+		for (int j = 0; j < columns; j++) {
+			for (int i = 0; i < rows; i++) {
+				data[i * columns + j] = (float) dataInputStream.readDouble();
+			}
+		}
+
+		return matrix;
+	}
 }
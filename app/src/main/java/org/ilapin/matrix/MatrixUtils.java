@@ -17,6 +17,19 @@ package org.ilapin.matrix;
 
 public class MatrixUtils {
 
+	// 32 x 256 doubles of A and 64 x 256 doubles of B: ~200KB working set, sized for L2
+	private static final int GEMM_BLOCK_ROWS = 32;
+	private static final int GEMM_BLOCK_COLUMNS = 64;
+	private static final int GEMM_BLOCK_DEPTH = 256;
+
+	// 128 x 256 doubles of B (256KB) stay in L2, one 256 doubles row segment of C stays in L1
+	private static final int IKJ_BLOCK_ROWS = 64;
+	private static final int IKJ_BLOCK_COLUMNS = 256;
+	private static final int IKJ_BLOCK_DEPTH = 128;
+
+	// 32 x 32 doubles: one 8KB tile of the source and one of the destination fit L1 together
+	static final int TRANSPOSE_BLOCK_SIZE = 32;
+
 	public static double[][] matrixSum(final double[][] a, final double[][] b) {
 		final double[][] c = new double[a.length][a[0].length];
 
@@ -84,4 +97,417 @@ public class MatrixUtils {
 
 		return vector;
 	}
+
+	public static Matrix matrixSum(final Matrix a, final Matrix b) {
+		final Matrix c = new Matrix(a.getRows(), a.getColumns());
+		matrixSum(a, b, c);
+		return c;
+	}
+
+	public static void matrixSum(final Matrix a, final Matrix b, final Matrix c) {
+		if (a.getRows() != b.getRows() || a.getColumns() != b.getColumns() ||
+				a.getRows() != c.getRows() || a.getColumns() != c.getColumns()) {
+			throw new IllegalArgumentException("Matrices have different dimensions");
+		}
+
+		final double[] aData = a.getData();
+		final double[] bData = b.getData();
+		final double[] cData = c.getData();
+		final int columns = a.getColumns();
+
+		for (int i = 0; i < a.getRows(); i++) {
+			final int aRow = a.index(i, 0);
+			final int bRow = b.index(i, 0);
+			final int cRow = c.index(i, 0);
+			for (int j = 0; j < columns; j++) {
+				cData[cRow + j] = aData[aRow + j] + bData[bRow + j];
+			}
+		}
+	}
+
+	public static Matrix matrixMultiply(final Matrix a, final Matrix b) {
+		final Matrix c = new Matrix(a.getRows(), b.getColumns());
+		matrixMultiply(a, b, c);
+		return c;
+	}
+
+	public static void matrixMultiply(final Matrix a, final Matrix b, final Matrix c) {
+		if (a.getColumns() != b.getRows() || c.getRows() != a.getRows() || c.getColumns() != b.getColumns()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		final double[] aData = a.getData();
+		final double[] bData = b.getData();
+		final double[] cData = c.getData();
+		final int n = a.getColumns();
+		final int bRowStride = b.getRowStride();
+
+		for (int i = 0; i < c.getRows(); i++) {
+			final int aRow = a.index(i, 0);
+			final int cRow = c.index(i, 0);
+			for (int j = 0; j < c.getColumns(); j++) {
+				double sum = 0;
+				int bIndex = b.index(0, j);
+				for (int k = 0; k < n; k++) {
+					sum += aData[aRow + k] * bData[bIndex];
+					bIndex += bRowStride;
+				}
+				cData[cRow + j] = sum;
+			}
+		}
+	}
+
+	public static Matrix matrixMultiplyBlocked(final Matrix a, final Matrix b) {
+		final Matrix c = new Matrix(a.getRows(), b.getColumns());
+		matrixMultiplyBlocked(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Same product as {@link #matrixMultiply(Matrix, Matrix, Matrix)} computed in i-k-j order over tiles,
+	 * so B and C are walked along rows instead of down columns. Four rows of B are combined per pass over
+	 * a row segment of C to cut loads and stores of C by four. When B is already available transposed use
+	 * {@link #matrixMultiplyTransposed(Matrix, Matrix, Matrix)}, which needs no C accumulation at all.
+	 */
+	public static void matrixMultiplyBlocked(final Matrix a, final Matrix b, final Matrix c) {
+		if (a.getColumns() != b.getRows() || c.getRows() != a.getRows() || c.getColumns() != b.getColumns()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		final double[] aData = a.getData();
+		final double[] bData = b.getData();
+		final double[] cData = c.getData();
+		final int m = a.getRows();
+		final int n = b.getColumns();
+		final int depth = a.getColumns();
+		final int bRowStride = b.getRowStride();
+
+		c.fill(0);
+
+		for (int ii = 0; ii < m; ii += IKJ_BLOCK_ROWS) {
+			final int iEnd = Math.min(ii + IKJ_BLOCK_ROWS, m);
+			for (int kk = 0; kk < depth; kk += IKJ_BLOCK_DEPTH) {
+				final int kEnd = Math.min(kk + IKJ_BLOCK_DEPTH, depth);
+				for (int jj = 0; jj < n; jj += IKJ_BLOCK_COLUMNS) {
+					final int jEnd = Math.min(jj + IKJ_BLOCK_COLUMNS, n);
+					for (int i = ii; i < iEnd; i++) {
+						final int aRow = a.index(i, 0);
+						final int cRow = c.index(i, 0);
+						int k = kk;
+						for (; k + 3 < kEnd; k += 4) {
+							final double a0 = aData[aRow + k];
+							final double a1 = aData[aRow + k + 1];
+							final double a2 = aData[aRow + k + 2];
+							final double a3 = aData[aRow + k + 3];
+							final int b0 = b.index(k, 0);
+							final int b1 = b0 + bRowStride;
+							final int b2 = b1 + bRowStride;
+							final int b3 = b2 + bRowStride;
+							for (int j = jj; j < jEnd; j++) {
+								cData[cRow + j] += a0 * bData[b0 + j] + a1 * bData[b1 + j] +
+										a2 * bData[b2 + j] + a3 * bData[b3 + j];
+							}
+						}
+						for (; k < kEnd; k++) {
+							final double aValue = aData[aRow + k];
+							final int bRow = b.index(k, 0);
+							for (int j = jj; j < jEnd; j++) {
+								cData[cRow + j] += aValue * bData[bRow + j];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parallel {@link #matrixMultiplyBlocked(Matrix, Matrix, Matrix)}: rows of A and C are split into
+	 * panels, each panel is multiplied by the whole B on its own task.
+	 */
+	public static void matrixMultiplyBlocked(final Matrix a, final Matrix b, final Matrix c,
+											 final ParallelExecution parallelExecution) {
+		if (a.getColumns() != b.getRows() || c.getRows() != a.getRows() || c.getColumns() != b.getColumns()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		parallelExecution.forEachRange(
+				a.getRows(),
+				(long) a.getColumns() * b.getColumns(),
+				new ParallelExecution.RangeTask() {
+
+					@Override
+					public void run(final int from, final int to) {
+						matrixMultiplyBlocked(
+								a.view(from, 0, to - from, a.getColumns()),
+								b,
+								c.view(from, 0, to - from, c.getColumns())
+						);
+					}
+				}
+		);
+	}
+
+	/**
+	 * C = A * B<sup>T</sup>, with B given in its transposed form. Every element of C is a dot product of two
+	 * rows, so both operands are read sequentially. The loops are blocked so that a panel of B rows stays in
+	 * cache while all rows of the current A panel are multiplied by it, and four columns of C are
+	 * accumulated at once to reuse each loaded element of A.
+	 */
+	public static void matrixMultiplyTransposed(final Matrix a, final Matrix bTransposed, final Matrix c) {
+		if (a.getColumns() != bTransposed.getColumns() ||
+				c.getRows() != a.getRows() || c.getColumns() != bTransposed.getRows()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		final double[] aData = a.getData();
+		final double[] bData = bTransposed.getData();
+		final double[] cData = c.getData();
+		final int m = a.getRows();
+		final int n = bTransposed.getRows();
+		final int depth = a.getColumns();
+
+		c.fill(0);
+
+		for (int kk = 0; kk < depth; kk += GEMM_BLOCK_DEPTH) {
+			final int kEnd = Math.min(kk + GEMM_BLOCK_DEPTH, depth);
+			for (int jj = 0; jj < n; jj += GEMM_BLOCK_COLUMNS) {
+				final int jEnd = Math.min(jj + GEMM_BLOCK_COLUMNS, n);
+				for (int ii = 0; ii < m; ii += GEMM_BLOCK_ROWS) {
+					final int iEnd = Math.min(ii + GEMM_BLOCK_ROWS, m);
+					for (int i = ii; i < iEnd; i++) {
+						final int aRow = a.index(i, 0);
+						final int cRow = c.index(i, 0);
+						int j = jj;
+						for (; j + 3 < jEnd; j += 4) {
+							final int b0 = bTransposed.index(j, 0);
+							final int b1 = bTransposed.index(j + 1, 0);
+							final int b2 = bTransposed.index(j + 2, 0);
+							final int b3 = bTransposed.index(j + 3, 0);
+							double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+							for (int k = kk; k < kEnd; k++) {
+								final double aValue = aData[aRow + k];
+								sum0 += aValue * bData[b0 + k];
+								sum1 += aValue * bData[b1 + k];
+								sum2 += aValue * bData[b2 + k];
+								sum3 += aValue * bData[b3 + k];
+							}
+							cData[cRow + j] += sum0;
+							cData[cRow + j + 1] += sum1;
+							cData[cRow + j + 2] += sum2;
+							cData[cRow + j + 3] += sum3;
+						}
+						for (; j < jEnd; j++) {
+							final int bRow = bTransposed.index(j, 0);
+							double sum = 0;
+							for (int k = kk; k < kEnd; k++) {
+								sum += aData[aRow + k] * bData[bRow + k];
+							}
+							cData[cRow + j] += sum;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parallel {@link #matrixMultiplyTransposed(Matrix, Matrix, Matrix)} split by row panels of A and C.
+	 */
+	public static void matrixMultiplyTransposed(final Matrix a, final Matrix bTransposed, final Matrix c,
+												final ParallelExecution parallelExecution) {
+		if (a.getColumns() != bTransposed.getColumns() ||
+				c.getRows() != a.getRows() || c.getColumns() != bTransposed.getRows()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		parallelExecution.forEachRange(
+				a.getRows(),
+				(long) a.getColumns() * bTransposed.getRows(),
+				new ParallelExecution.RangeTask() {
+
+					@Override
+					public void run(final int from, final int to) {
+						matrixMultiplyTransposed(
+								a.view(from, 0, to - from, a.getColumns()),
+								bTransposed,
+								c.view(from, 0, to - from, c.getColumns())
+						);
+					}
+				}
+		);
+	}
+
+	/**
+	 * y = A * x. Rows of A are read sequentially, which is the layout the forward pass wants.
+	 */
+	public static void matrixVectorMultiply(final Matrix a, final Vector x, final Vector y) {
+		if (a.getColumns() != x.getLength() || a.getRows() != y.getLength()) {
+			throw new IllegalArgumentException("Matrix and vectors do not fit for multiplication");
+		}
+
+		if (x.isContiguous() && y.isContiguous()) {
+			Kernels.getDefault().matrixVectorMultiply(a, x.getData(), x.getOffset(), y.getData(), y.getOffset());
+			return;
+		}
+
+		final double[] aData = a.getData();
+		final double[] xData = x.getData();
+		final double[] yData = y.getData();
+		final int n = a.getColumns();
+		final int xOffset = x.getOffset();
+		final int xStride = x.getStride();
+
+		for (int i = 0; i < a.getRows(); i++) {
+			final int aRow = a.index(i, 0);
+			double sum = 0;
+			int xIndex = xOffset;
+			for (int k = 0; k < n; k++) {
+				sum += aData[aRow + k] * xData[xIndex];
+				xIndex += xStride;
+			}
+			yData[y.getOffset() + i * y.getStride()] = sum;
+		}
+	}
+
+	/**
+	 * y = A * x for a sparse A, touching only the stored elements of A.
+	 */
+	public static void matrixVectorMultiply(final SparseMatrix a, final Vector x, final Vector y) {
+		if (a.getColumns() != x.getLength() || a.getRows() != y.getLength()) {
+			throw new IllegalArgumentException("Matrix and vectors do not fit for multiplication");
+		}
+
+		if (x.isContiguous() && y.isContiguous()) {
+			Kernels.getDefault().matrixVectorMultiply(a, x.getData(), x.getOffset(), y.getData(), y.getOffset());
+			return;
+		}
+
+		final int[] rowStarts = a.getRowStarts();
+		final int[] columnIndexes = a.getColumnIndexes();
+		final double[] values = a.getValues();
+		for (int i = 0; i < a.getRows(); i++) {
+			double sum = 0;
+			for (int p = rowStarts[i]; p < rowStarts[i + 1]; p++) {
+				sum += values[p] * x.get(columnIndexes[p]);
+			}
+			y.set(i, sum);
+		}
+	}
+
+	/**
+	 * C = A * B for a sparse A: every stored A[i][k] adds a scaled row k of B to row i of C.
+	 */
+	public static void matrixMultiply(final SparseMatrix a, final Matrix b, final Matrix c) {
+		if (a.getColumns() != b.getRows() || c.getRows() != a.getRows() || c.getColumns() != b.getColumns()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		final int[] rowStarts = a.getRowStarts();
+		final int[] columnIndexes = a.getColumnIndexes();
+		final double[] values = a.getValues();
+		final double[] bData = b.getData();
+		final double[] cData = c.getData();
+		final int n = b.getColumns();
+
+		c.fill(0);
+		for (int i = 0; i < a.getRows(); i++) {
+			final int cRow = c.index(i, 0);
+			for (int p = rowStarts[i]; p < rowStarts[i + 1]; p++) {
+				final double aValue = values[p];
+				final int bRow = b.index(columnIndexes[p], 0);
+				for (int j = 0; j < n; j++) {
+					cData[cRow + j] += aValue * bData[bRow + j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * C = A * B<sup>T</sup> with B sparse and given in its transposed form, e.g. a batch of samples times
+	 * a sparse weight matrix.
+	 */
+	public static void matrixMultiplyTransposed(final Matrix a, final SparseMatrix bTransposed, final Matrix c) {
+		if (a.getColumns() != bTransposed.getColumns() ||
+				c.getRows() != a.getRows() || c.getColumns() != bTransposed.getRows()) {
+			throw new IllegalArgumentException("Matrices do not fit for multiplication");
+		}
+
+		final int[] rowStarts = bTransposed.getRowStarts();
+		final int[] columnIndexes = bTransposed.getColumnIndexes();
+		final double[] values = bTransposed.getValues();
+		final double[] aData = a.getData();
+		final double[] cData = c.getData();
+
+		for (int i = 0; i < a.getRows(); i++) {
+			final int aRow = a.index(i, 0);
+			final int cRow = c.index(i, 0);
+			for (int j = 0; j < bTransposed.getRows(); j++) {
+				double sum = 0;
+				for (int p = rowStarts[j]; p < rowStarts[j + 1]; p++) {
+					sum += values[p] * aData[aRow + columnIndexes[p]];
+				}
+				cData[cRow + j] = sum;
+			}
+		}
+	}
+
+	public static void vectorSum(final Vector a, final Vector b, final Vector c) {
+		if (a.getLength() != b.getLength() || a.getLength() != c.getLength()) {
+			throw new IllegalArgumentException("Vectors have different lengths");
+		}
+
+		if (a.isContiguous() && b.isContiguous() && c.isContiguous()) {
+			Kernels.getDefault().add(
+					a.getData(), a.getOffset(),
+					b.getData(), b.getOffset(),
+					c.getData(), c.getOffset(),
+					a.getLength()
+			);
+			return;
+		}
+
+		for (int i = 0; i < a.getLength(); i++) {
+			c.set(i, a.get(i) + b.get(i));
+		}
+	}
+
+	public static Matrix matrixTranspose(final Matrix a) {
+		final Matrix b = new Matrix(a.getColumns(), a.getRows());
+		matrixTranspose(a, b);
+		return b;
+	}
+
+	/**
+	 * B = A<sup>T</sup>, done in square tiles so both the rows read from A and the rows written to B stay in
+	 * cache for the whole tile.
+	 */
+	public static void matrixTranspose(final Matrix a, final Matrix b) {
+		if (a.getRows() != b.getColumns() || a.getColumns() != b.getRows()) {
+			throw new IllegalArgumentException("Matrices do not fit for transposition");
+		}
+
+		final double[] aData = a.getData();
+		final double[] bData = b.getData();
+		final int aRowStride = a.getRowStride();
+
+		for (int ii = 0; ii < b.getRows(); ii += TRANSPOSE_BLOCK_SIZE) {
+			final int iEnd = Math.min(ii + TRANSPOSE_BLOCK_SIZE, b.getRows());
+			for (int jj = 0; jj < b.getColumns(); jj += TRANSPOSE_BLOCK_SIZE) {
+				final int jEnd = Math.min(jj + TRANSPOSE_BLOCK_SIZE, b.getColumns());
+				for (int i = ii; i < iEnd; i++) {
+					final int bRow = b.index(i, 0);
+					int aIndex = a.index(jj, i);
+					for (int j = jj; j < jEnd; j++) {
+						bData[bRow + j] = aData[aIndex];
+						aIndex += aRowStride;
+					}
+				}
+			}
+		}
+	}
+
+	public static double[] matrixToVectorArray(final Matrix a) {
+		return a.asVector().toArray();
+	}
 }
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits index ranges into chunks and runs them on an executor. Work below the sequential threshold
+ * (measured in multiply-adds) stays on the calling thread, so small problems such as a single sample do
+ * not pay for task hand-off.
+ */
+public class ParallelExecution {
+
+	public static final long DEFAULT_SEQUENTIAL_THRESHOLD = 1 << 21;
+
+	private final ExecutorService mExecutorService;
+	private final int mParallelism;
+	private final long mSequentialThreshold;
+	private final ThreadLocal<Boolean> mRunningChunk = new ThreadLocal<>();
+
+	public ParallelExecution(final ExecutorService executorService, final int parallelism) {
+		this(executorService, parallelism, DEFAULT_SEQUENTIAL_THRESHOLD);
+	}
+
+	public ParallelExecution(final ExecutorService executorService,
+							 final int parallelism,
+							 final long sequentialThreshold) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism is less than or equal to zero");
+		}
+
+		mExecutorService = executorService;
+		mParallelism = parallelism;
+		mSequentialThreshold = sequentialThreshold;
+	}
+
+	public int getParallelism() {
+		return mParallelism;
+	}
+
+	/**
+	 * Runs {@code task} over {@code [0, count)}, split into at most {@link #getParallelism()} contiguous
+	 * chunks and never into chunks cheaper than the sequential threshold. The last chunk runs on the
+	 * calling thread. Returns when every chunk is done; if a chunk fails, chunks that have not started are
+	 * skipped and the running ones are waited for before the failure is rethrown. Unchecked exceptions and
+	 * errors are rethrown as they are, checked ones wrapped in a {@link RuntimeException}.
+	 * <p/>
+	 * The calling thread blocks until the submitted chunks finish, so it must not be a thread of the
+	 * executor unless the pool can run them on other threads meanwhile; otherwise a bounded pool can
+	 * deadlock. Nested calls made from a chunk of this instance are detected and run on the calling thread.
+	 *
+	 * @param workPerItem cost of one item in multiply-adds
+	 */
+	public void forEachRange(final int count, final long workPerItem, final RangeTask task) {
+		final long totalWork = count * workPerItem;
+		final int chunksNumber = (int) Math.max(1, Math.min(
+				Math.min(mParallelism, count),
+				totalWork / Math.max(1, mSequentialThreshold)
+		));
+
+		if (chunksNumber == 1 || mRunningChunk.get() != null) {
+			task.run(0, count);
+			return;
+		}
+
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final List<Future<?>> futures = new ArrayList<>(chunksNumber - 1);
+		try {
+			for (int chunk = 0; chunk < chunksNumber - 1; chunk++) {
+				final int from = chunkStart(chunk, chunksNumber, count);
+				final int to = chunkStart(chunk + 1, chunksNumber, count);
+				futures.add(mExecutorService.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						if (aborted.get()) {
+							return;
+						}
+						mRunningChunk.set(Boolean.TRUE);
+						try {
+							task.run(from, to);
+						} finally {
+							mRunningChunk.remove();
+						}
+					}
+				}));
+			}
+
+			task.run(chunkStart(chunksNumber - 1, chunksNumber, count), count);
+		} catch (final Throwable e) {
+			aborted.set(true);
+			awaitAll(futures, aborted);
+			throw e;
+		}
+
+		final Throwable failure = awaitAll(futures, aborted);
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new RuntimeException(failure);
+		}
+	}
+
+	/**
+	 * Waits for every future, also after one has failed or the caller was interrupted, so no chunk is still
+	 * writing when {@link #forEachRange} returns or throws. Chunks that have not started yet are skipped
+	 * once {@code aborted} is set.
+	 *
+	 * @return the first failure, or null
+	 */
+	private static Throwable awaitAll(final List<Future<?>> futures, final AtomicBoolean aborted) {
+		Throwable failure = null;
+		boolean interrupted = false;
+		for (final Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (final InterruptedException e) {
+					interrupted = true;
+					aborted.set(true);
+					if (failure == null) {
+						failure = e;
+					}
+				} catch (final ExecutionException e) {
+					aborted.set(true);
+					if (failure == null) {
+						failure = e.getCause();
+					}
+					break;
+				}
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return failure;
+	}
+
+	private static int chunkStart(final int chunk, final int chunksNumber, final int count) {
+		return (int) ((long) chunk * count / chunksNumber);
+	}
+
+	public interface RangeTask {
+
+		void run(final int from, final int to);
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+class ScalarKernels extends Kernels {
+
+	@Override
+	public double dot(final double[] a, final int aOffset,
+					  final double[] b, final int bOffset,
+					  final int length) {
+		double sum = 0;
+
+		for (int i = 0; i < length; i++) {
+			sum += a[aOffset + i] * b[bOffset + i];
+		}
+
+		return sum;
+	}
+
+	@Override
+	public double gatherDot(final double[] w, final int wOffset, final double[] x, final int[] indexes) {
+		double sum = 0;
+
+		for (int i = 0; i < indexes.length; i++) {
+			sum += w[wOffset + i] * x[indexes[i]];
+		}
+
+		return sum;
+	}
+}
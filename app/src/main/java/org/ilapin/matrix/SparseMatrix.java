@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Sparse matrix in compressed sparse row (CSR) form: the non-zero values of row i and their column
+ * indexes are {@code values[rowStarts[i]..rowStarts[i + 1])} and
+ * {@code columnIndexes[rowStarts[i]..rowStarts[i + 1])}. Immutable once built.
+ */
+public class SparseMatrix {
+
+	private final int mRows;
+	private final int mColumns;
+	private final int[] mRowStarts;
+	private final int[] mColumnIndexes;
+	private final double[] mValues;
+
+	public SparseMatrix(final int rows, final int columns,
+						final int[] rowStarts, final int[] columnIndexes, final double[] values) {
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Matrix dimensions must be greater than zero");
+		}
+		if (rowStarts.length != rows + 1 || rowStarts[0] != 0 || rowStarts[rows] != values.length ||
+				columnIndexes.length != values.length) {
+			throw new IllegalArgumentException("Row starts do not fit values");
+		}
+		for (int i = 0; i < rows; i++) {
+			if (rowStarts[i] > rowStarts[i + 1]) {
+				throw new IllegalArgumentException("Row starts are not ascending");
+			}
+		}
+		for (final int columnIndex : columnIndexes) {
+			if (columnIndex < 0 || columnIndex >= columns) {
+				throw new IllegalArgumentException("Column index " + columnIndex + " is out of matrix bounds");
+			}
+		}
+
+		mRows = rows;
+		mColumns = columns;
+		mRowStarts = Arrays.copyOf(rowStarts, rowStarts.length);
+		mColumnIndexes = Arrays.copyOf(columnIndexes, columnIndexes.length);
+		mValues = Arrays.copyOf(values, values.length);
+	}
+
+	/**
+	 * Keeps the non-zero elements of {@code a}.
+	 */
+	public static SparseMatrix fromMatrix(final Matrix a) {
+		int nonZerosNumber = 0;
+		for (int i = 0; i < a.getRows(); i++) {
+			for (int j = 0; j < a.getColumns(); j++) {
+				if (a.get(i, j) != 0) {
+					nonZerosNumber++;
+				}
+			}
+		}
+
+		final int[] rowStarts = new int[a.getRows() + 1];
+		final int[] columnIndexes = new int[nonZerosNumber];
+		final double[] values = new double[nonZerosNumber];
+		int p = 0;
+		for (int i = 0; i < a.getRows(); i++) {
+			rowStarts[i] = p;
+			for (int j = 0; j < a.getColumns(); j++) {
+				final double value = a.get(i, j);
+				if (value != 0) {
+					columnIndexes[p] = j;
+					values[p] = value;
+					p++;
+				}
+			}
+		}
+		rowStarts[a.getRows()] = p;
+
+		return new SparseMatrix(a.getRows(), a.getColumns(), rowStarts, columnIndexes, values);
+	}
+
+	public Matrix toMatrix() {
+		final Matrix matrix = new Matrix(mRows, mColumns);
+		for (int i = 0; i < mRows; i++) {
+			for (int p = mRowStarts[i]; p < mRowStarts[i + 1]; p++) {
+				matrix.set(i, mColumnIndexes[p], matrix.get(i, mColumnIndexes[p]) + mValues[p]);
+			}
+		}
+		return matrix;
+	}
+
+	public int getRows() {
+		return mRows;
+	}
+
+	public int getColumns() {
+		return mColumns;
+	}
+
+	public int getNonZerosNumber() {
+		return mValues.length;
+	}
+
+	/**
+	 * Share of elements that are stored, between 0 and 1.
+	 */
+	public double getDensity() {
+		return (double) mValues.length / ((long) mRows * mColumns);
+	}
+
+	public int[] getRowStarts() {
+		return mRowStarts;
+	}
+
+	public int[] getColumnIndexes() {
+		return mColumnIndexes;
+	}
+
+	public double[] getValues() {
+		return mValues;
+	}
+}
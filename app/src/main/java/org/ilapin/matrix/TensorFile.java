@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Container holding several named matrices in one file, meant to be memory-mapped.
+ * <p/>
+ * Layout, little-endian:
+ * <pre>
+ * header:  magic "RVTF" | int version | int tensors number | long CRC32 of the data region
+ * entry:   short name length | UTF-8 name | byte data type | byte layout | int rows | int columns |
+ *          long data offset | long data length
+ * data:    every tensor starts at a multiple of {@value #ALIGNMENT} bytes from the file start
+ * </pre>
+ * Tensors are stored row-major, the layout {@link Matrix} and {@link FloatMatrix} use, so
+ * {@link Tensor#asDoubleBuffer()} and {@link Tensor#asFloatBuffer()} are zero-copy views of the mapping and
+ * {@link Tensor#toMatrix()} is a single bulk copy.
+ */
+public class TensorFile {
+
+	public static final int VERSION = 1;
+
+	public static final byte DATA_TYPE_FLOAT64 = 1;
+	public static final byte DATA_TYPE_FLOAT32 = 2;
+
+	public static final byte LAYOUT_ROW_MAJOR = 0;
+
+	private static final byte[] MAGIC = {'R', 'V', 'T', 'F'};
+	private static final int ALIGNMENT = 64;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer mBuffer;
+	private final Map<String, Tensor> mTensors;
+	private final long mChecksum;
+	private final int mDataOffset;
+
+	private TensorFile(final ByteBuffer buffer, final boolean verifyChecksum) throws IOException {
+		mBuffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		try {
+			final byte[] magic = new byte[MAGIC.length];
+			mBuffer.get(magic);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic[i] != MAGIC[i]) {
+					throw new IOException("Not a tensor file");
+				}
+			}
+			final int version = mBuffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported tensor file version: " + version);
+			}
+
+			final int tensorsNumber = mBuffer.getInt();
+			if (tensorsNumber < 0) {
+				throw new IOException("Negative number of tensors: " + tensorsNumber);
+			}
+			mChecksum = mBuffer.getLong();
+
+			final Map<String, Tensor> tensors = new LinkedHashMap<>();
+			for (int i = 0; i < tensorsNumber; i++) {
+				final short nameLength = mBuffer.getShort();
+				if (nameLength < 0) {
+					throw new IOException("Negative tensor name length: " + nameLength);
+				}
+				final byte[] name = new byte[nameLength];
+				mBuffer.get(name);
+				final Tensor tensor = new Tensor(
+						new String(name, UTF_8),
+						mBuffer.get(),
+						mBuffer.get(),
+						mBuffer.getInt(),
+						mBuffer.getInt(),
+						mBuffer.getLong(),
+						mBuffer.getLong()
+				);
+				tensors.put(tensor.mName, tensor);
+			}
+			mTensors = Collections.unmodifiableMap(tensors);
+		} catch (final BufferUnderflowException e) {
+			throw new IOException("Tensor file header is truncated");
+		}
+		mDataOffset = align(mBuffer.position());
+		if (mDataOffset > mBuffer.capacity()) {
+			throw new IOException("Tensor file data region is truncated");
+		}
+
+		for (final Tensor tensor : mTensors.values()) {
+			if (tensor.mOffset < mDataOffset || tensor.mOffset > mBuffer.capacity() - tensor.mLength) {
+				throw new IOException("Tensor " + tensor.mName + " is out of the data region");
+			}
+		}
+		if (verifyChecksum && !verifyChecksum()) {
+			throw new IOException("Tensor file checksum does not match");
+		}
+	}
+
+	/**
+	 * Maps the file read-only and verifies its checksum. The mapping stays valid after the channel is
+	 * closed.
+	 */
+	public static TensorFile open(final File file) throws IOException {
+		return open(file, true);
+	}
+
+	/**
+	 * @param verifyChecksum false to skip reading the whole data region, only the header and the tensor
+	 * bounds are checked then; {@link #verifyChecksum()} can be called later
+	 */
+	public static TensorFile open(final File file, final boolean verifyChecksum) throws IOException {
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = randomAccessFile.getChannel();
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new TensorFile(buffer, verifyChecksum);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	public static TensorFile wrap(final ByteBuffer buffer) throws IOException {
+		return wrap(buffer, true);
+	}
+
+	public static TensorFile wrap(final ByteBuffer buffer, final boolean verifyChecksum) throws IOException {
+		return new TensorFile(buffer.duplicate(), verifyChecksum);
+	}
+
+	public Map<String, Tensor> getTensors() {
+		return mTensors;
+	}
+
+	public Tensor getTensor(final String name) {
+		final Tensor tensor = mTensors.get(name);
+		if (tensor == null) {
+			throw new IllegalArgumentException("No tensor named " + name);
+		}
+		return tensor;
+	}
+
+	/**
+	 * Reads the whole data region, so it touches every page of the mapping.
+	 */
+	public boolean verifyChecksum() {
+		return calculateChecksum(mBuffer, mDataOffset, mBuffer.capacity()) == mChecksum;
+	}
+
+	private static long calculateChecksum(final ByteBuffer buffer, final int from, final int to) {
+		final ByteBuffer data = buffer.duplicate();
+		data.position(from);
+		data.limit(to);
+
+		final CRC32 crc = new CRC32();
+		final byte[] chunk = new byte[8192];
+		while (data.hasRemaining()) {
+			final int length = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+		return crc.getValue();
+	}
+
+	private static int align(final int position) {
+		return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	public class Tensor {
+
+		private final String mName;
+		private final byte mDataType;
+		private final byte mLayout;
+		private final int mRows;
+		private final int mColumns;
+		private final long mOffset;
+		private final long mLength;
+
+		private Tensor(final String name,
+					   final byte dataType,
+					   final byte layout,
+					   final int rows,
+					   final int columns,
+					   final long offset,
+					   final long length) throws IOException {
+			if (rows <= 0 || columns <= 0) {
+				throw new IOException("Empty or negative size of tensor " + name);
+			}
+			if (offset < 0) {
+				throw new IOException("Negative offset of tensor " + name);
+			}
+			if (layout != LAYOUT_ROW_MAJOR) {
+				throw new IOException("Unsupported layout of tensor " + name);
+			}
+			if (length != (long) rows * columns * elementSize(dataType)) {
+				throw new IOException("Wrong data length of tensor " + name);
+			}
+
+			mName = name;
+			mDataType = dataType;
+			mLayout = layout;
+			mRows = rows;
+			mColumns = columns;
+			mOffset = offset;
+			mLength = length;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public byte getDataType() {
+			return mDataType;
+		}
+
+		public byte getLayout() {
+			return mLayout;
+		}
+
+		public int getRows() {
+			return mRows;
+		}
+
+		public int getColumns() {
+			return mColumns;
+		}
+
+		public DoubleBuffer asDoubleBuffer() {
+			if (mDataType != DATA_TYPE_FLOAT64) {
+				throw new IllegalStateException("Tensor " + mName + " is not float64");
+			}
+			return slice().asDoubleBuffer();
+		}
+
+		public FloatBuffer asFloatBuffer() {
+			if (mDataType != DATA_TYPE_FLOAT32) {
+				throw new IllegalStateException("Tensor " + mName + " is not float32");
+			}
+			return slice().asFloatBuffer();
+		}
+
+		public Matrix toMatrix() {
+			final Matrix matrix = new Matrix(mRows, mColumns);
+			if (mDataType == DATA_TYPE_FLOAT64) {
+				asDoubleBuffer().get(matrix.getData());
+			} else {
+				final FloatBuffer buffer = asFloatBuffer();
+				final double[] data = matrix.getData();
+				for (int i = 0; i < data.length; i++) {
+					data[i] = buffer.get(i);
+				}
+			}
+			return matrix;
+		}
+
+		public FloatMatrix toFloatMatrix() {
+			final FloatMatrix matrix = new FloatMatrix(mRows, mColumns);
+			if (mDataType == DATA_TYPE_FLOAT32) {
+				asFloatBuffer().get(matrix.getData());
+			} else {
+				final DoubleBuffer buffer = asDoubleBuffer();
+				final float[] data = matrix.getData();
+				for (int i = 0; i < data.length; i++) {
+					data[i] = (float) buffer.get(i);
+				}
+			}
+			return matrix;
+		}
+
+		private ByteBuffer slice() {
+			final ByteBuffer buffer = mBuffer.duplicate();
+			buffer.position((int) mOffset);
+			buffer.limit((int) (mOffset + mLength));
+			return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	private static int elementSize(final byte dataType) throws IOException {
+		switch (dataType) {
+			case DATA_TYPE_FLOAT64:
+				return 8;
+
+			case DATA_TYPE_FLOAT32:
+				return 4;
+
+			default:
+				throw new IOException("Unsupported data type: " + dataType);
+		}
+	}
+
+	public static class Writer {
+
+		private final List<String> mNames = new ArrayList<>();
+		private final List<Object> mMatrices = new ArrayList<>();
+
+		public Writer add(final String name, final Matrix matrix) {
+			mNames.add(name);
+			mMatrices.add(matrix);
+			return this;
+		}
+
+		public Writer add(final String name, final FloatMatrix matrix) {
+			mNames.add(name);
+			mMatrices.add(matrix);
+			return this;
+		}
+
+		public void writeTo(final File file) throws IOException {
+			final byte[][] names = new byte[mNames.size()][];
+			int headerSize = MAGIC.length + 4 + 4 + 8;
+			for (int i = 0; i < names.length; i++) {
+				names[i] = mNames.get(i).getBytes(UTF_8);
+				headerSize += 2 + names[i].length + 1 + 1 + 4 + 4 + 8 + 8;
+			}
+
+			final long[] offsets = new long[names.length];
+			final long[] lengths = new long[names.length];
+			long fileSize = align(headerSize);
+			final int dataOffset = (int) fileSize;
+			for (int i = 0; i < names.length; i++) {
+				offsets[i] = fileSize;
+				lengths[i] = dataLength(mMatrices.get(i));
+				fileSize = align((int) (fileSize + lengths[i]));
+			}
+
+			final ByteBuffer buffer = ByteBuffer.allocate((int) fileSize).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < names.length; i++) {
+				buffer.position((int) offsets[i]);
+				writeData(buffer, mMatrices.get(i));
+			}
+
+			buffer.position(0);
+			buffer.put(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(names.length);
+			buffer.putLong(calculateChecksum(buffer, dataOffset, buffer.capacity()));
+			for (int i = 0; i < names.length; i++) {
+				final Object matrix = mMatrices.get(i);
+				buffer.putShort((short) names[i].length);
+				buffer.put(names[i]);
+				if (matrix instanceof Matrix) {
+					buffer.put(DATA_TYPE_FLOAT64);
+					buffer.put(LAYOUT_ROW_MAJOR);
+					buffer.putInt(((Matrix) matrix).getRows());
+					buffer.putInt(((Matrix) matrix).getColumns());
+				} else {
+					buffer.put(DATA_TYPE_FLOAT32);
+					buffer.put(LAYOUT_ROW_MAJOR);
+					buffer.putInt(((FloatMatrix) matrix).getRows());
+					buffer.putInt(((FloatMatrix) matrix).getColumns());
+				}
+				buffer.putLong(offsets[i]);
+				buffer.putLong(lengths[i]);
+			}
+
+			final FileOutputStream outputStream = new FileOutputStream(file);
+			try {
+				outputStream.write(buffer.array());
+			} finally {
+				outputStream.close();
+			}
+		}
+
+		private static long dataLength(final Object matrix) {
+			if (matrix instanceof Matrix) {
+				return 8L * ((Matrix) matrix).getRows() * ((Matrix) matrix).getColumns();
+			} else {
+				return 4L * ((FloatMatrix) matrix).getRows() * ((FloatMatrix) matrix).getColumns();
+			}
+		}
+
+		private static void writeData(final ByteBuffer buffer, final Object matrix) {
+			if (matrix instanceof Matrix) {
+				final Matrix a = (Matrix) matrix;
+				for (int i = 0; i < a.getRows(); i++) {
+					for (int j = 0; j < a.getColumns(); j++) {
+						buffer.putDouble(a.get(i, j));
+					}
+				}
+			} else {
+				final FloatMatrix a = (FloatMatrix) matrix;
+				for (int i = 0; i < a.getRows(); i++) {
+					for (int j = 0; j < a.getColumns(); j++) {
+						buffer.putFloat(a.get(i, j));
+					}
+				}
+			}
+		}
+	}
+}
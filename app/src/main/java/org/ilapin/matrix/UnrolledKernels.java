@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+/**
+ * Reductions (the dot products and the max and exponent sum of soft max) run over four independent
+ * accumulators, which removes the loop-carried dependency on a single value and lets the JIT issue the
+ * lanes in parallel. Element-wise kernels are inherited unchanged.
+ */
+class UnrolledKernels extends Kernels {
+
+	@Override
+	public double dot(final double[] a, final int aOffset,
+					  final double[] b, final int bOffset,
+					  final int length) {
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+		int i = 0;
+		for (; i + 3 < length; i += 4) {
+			sum0 += a[aOffset + i] * b[bOffset + i];
+			sum1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+			sum2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+			sum3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+		}
+		for (; i < length; i++) {
+			sum0 += a[aOffset + i] * b[bOffset + i];
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	@Override
+	public double gatherDot(final double[] w, final int wOffset, final double[] x, final int[] indexes) {
+		final int length = indexes.length;
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+		int i = 0;
+		for (; i + 3 < length; i += 4) {
+			sum0 += w[wOffset + i] * x[indexes[i]];
+			sum1 += w[wOffset + i + 1] * x[indexes[i + 1]];
+			sum2 += w[wOffset + i + 2] * x[indexes[i + 2]];
+			sum3 += w[wOffset + i + 3] * x[indexes[i + 3]];
+		}
+		for (; i < length; i++) {
+			sum0 += w[wOffset + i] * x[indexes[i]];
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	@Override
+	public void softMax(final double[] x, final int xOffset,
+						final double[] y, final int yOffset,
+						final int length) {
+		double max0 = x[xOffset], max1 = max0, max2 = max0, max3 = max0;
+		int i = 1;
+		for (; i + 3 < length; i += 4) {
+			max0 = Math.max(max0, x[xOffset + i]);
+			max1 = Math.max(max1, x[xOffset + i + 1]);
+			max2 = Math.max(max2, x[xOffset + i + 2]);
+			max3 = Math.max(max3, x[xOffset + i + 3]);
+		}
+		for (; i < length; i++) {
+			max0 = Math.max(max0, x[xOffset + i]);
+		}
+		final double maxValue = Math.max(Math.max(max0, max1), Math.max(max2, max3));
+
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		i = 0;
+		for (; i + 3 < length; i += 4) {
+			sum0 += y[yOffset + i] = Math.exp(x[xOffset + i] - maxValue);
+			sum1 += y[yOffset + i + 1] = Math.exp(x[xOffset + i + 1] - maxValue);
+			sum2 += y[yOffset + i + 2] = Math.exp(x[xOffset + i + 2] - maxValue);
+			sum3 += y[yOffset + i + 3] = Math.exp(x[xOffset + i + 3] - maxValue);
+		}
+		for (; i < length; i++) {
+			sum0 += y[yOffset + i] = Math.exp(x[xOffset + i] - maxValue);
+		}
+		double denominator = (sum0 + sum1) + (sum2 + sum3);
+		if (denominator == 0) {
+			denominator = 1;
+		}
+
+		final double reciprocal = 1 / denominator;
+		for (i = 0; i < length; i++) {
+			y[yOffset + i] *= reciprocal;
+		}
+	}
+
+	@Override
+	public void softMax(final float[] x, final int xOffset,
+						final float[] y, final int yOffset,
+						final int length) {
+		float max0 = x[xOffset], max1 = max0, max2 = max0, max3 = max0;
+		int i = 1;
+		for (; i + 3 < length; i += 4) {
+			max0 = Math.max(max0, x[xOffset + i]);
+			max1 = Math.max(max1, x[xOffset + i + 1]);
+			max2 = Math.max(max2, x[xOffset + i + 2]);
+			max3 = Math.max(max3, x[xOffset + i + 3]);
+		}
+		for (; i < length; i++) {
+			max0 = Math.max(max0, x[xOffset + i]);
+		}
+		final float maxValue = Math.max(Math.max(max0, max1), Math.max(max2, max3));
+
+		float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		i = 0;
+		for (; i + 3 < length; i += 4) {
+			sum0 += y[yOffset + i] = (float) Math.exp(x[xOffset + i] - maxValue);
+			sum1 += y[yOffset + i + 1] = (float) Math.exp(x[xOffset + i + 1] - maxValue);
+			sum2 += y[yOffset + i + 2] = (float) Math.exp(x[xOffset + i + 2] - maxValue);
+			sum3 += y[yOffset + i + 3] = (float) Math.exp(x[xOffset + i + 3] - maxValue);
+		}
+		for (; i < length; i++) {
+			sum0 += y[yOffset + i] = (float) Math.exp(x[xOffset + i] - maxValue);
+		}
+		float denominator = (sum0 + sum1) + (sum2 + sum3);
+		if (denominator == 0) {
+			denominator = 1;
+		}
+
+		final float reciprocal = 1 / denominator;
+		for (i = 0; i < length; i++) {
+			y[yOffset + i] *= reciprocal;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.matrix;
+
+/**
+ * Dense vector backed by a {@code double[]}. Element i lives at {@code offset + i * stride}, which lets
+ * a vector be a row or a column of a {@link Matrix} without copying.
+ */
+public class Vector {
+
+	private final double[] mData;
+	private final int mOffset;
+	private final int mLength;
+	private final int mStride;
+
+	public Vector(final int length) {
+		this(new double[checkLength(length)], 0, length, 1);
+	}
+
+	public Vector(final double[] data) {
+		this(data, 0, data.length, 1);
+	}
+
+	public Vector(final double[] data, final int offset, final int length, final int stride) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("Vector length must be greater than zero");
+		}
+		if (stride <= 0) {
+			throw new IllegalArgumentException("Vector stride must be greater than zero");
+		}
+		if (offset < 0 || offset + (length - 1) * stride >= data.length) {
+			throw new IllegalArgumentException("Vector does not fit backing array");
+		}
+
+		mData = data;
+		mOffset = offset;
+		mLength = length;
+		mStride = stride;
+	}
+
+	public double get(final int i) {
+		return mData[mOffset + i * mStride];
+	}
+
+	public void set(final int i, final double value) {
+		mData[mOffset + i * mStride] = value;
+	}
+
+	public double[] getData() {
+		return mData;
+	}
+
+	public int getOffset() {
+		return mOffset;
+	}
+
+	public int getLength() {
+		return mLength;
+	}
+
+	public int getStride() {
+		return mStride;
+	}
+
+	public boolean isContiguous() {
+		return mStride == 1;
+	}
+
+	public void copyTo(final Vector dst) {
+		if (dst.mLength != mLength) {
+			throw new IllegalArgumentException("Destination vector has different length");
+		}
+
+		if (isContiguous() && dst.isContiguous()) {
+			System.arraycopy(mData, mOffset, dst.mData, dst.mOffset, mLength);
+		} else {
+			for (int i = 0; i < mLength; i++) {
+				dst.mData[dst.mOffset + i * dst.mStride] = mData[mOffset + i * mStride];
+			}
+		}
+	}
+
+	public Vector copy() {
+		final Vector vector = new Vector(mLength);
+		copyTo(vector);
+		return vector;
+	}
+
+	public double[] toArray() {
+		final double[] a = new double[mLength];
+		copyTo(new Vector(a));
+		return a;
+	}
+
+	private static int checkLength(final int length) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("Vector length must be greater than zero");
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.FloatMatrix;
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Vector;
+
+import java.util.Arrays;
+
+/**
+ * Single precision version of {@link NeuralNetwork}. Weights take half the memory and the dot products run
+ * on floats; min-max normalization is folded into the input layer the same way {@link FusedInputLayer}
+ * does it, with the folding itself computed in double precision.
+ */
+public class FloatNeuralNetwork {
+
+	private final FloatMatrix mInputWeights; // folded
+	private final float[] mInputBiases; // folded
+	private final FloatMatrix mLayerWeights;
+	private final float[] mLayerBiases;
+	private final int[] mKeepInputsIndexes;
+	private final Kernels mKernels = Kernels.getDefault();
+
+	public FloatNeuralNetwork(final FloatMatrix inputWeights,
+							  final FloatMatrix inputBiases, // column vector
+							  final FloatMatrix layerWeights,
+							  final FloatMatrix layerBiases, // column vector
+							  final FloatMatrix xOffset, // column vector
+							  final FloatMatrix gain, // column vector
+							  final double yMin,
+							  final int[] keepInputsIndexes) {
+		final int neuronsNumber = inputWeights.getRows();
+		final int inputsNumber = inputWeights.getColumns();
+		if (keepInputsIndexes.length != inputsNumber || !isColumnVector(xOffset, inputsNumber) ||
+				!isColumnVector(gain, inputsNumber) || !isColumnVector(inputBiases, neuronsNumber)) {
+			throw new IllegalArgumentException("Input layer parameters do not fit each other");
+		}
+		if (layerWeights.getColumns() != neuronsNumber || !isColumnVector(layerBiases, layerWeights.getRows())) {
+			throw new IllegalArgumentException("Layer parameters do not fit input layer");
+		}
+
+		mInputWeights = new FloatMatrix(neuronsNumber, inputsNumber);
+		mInputBiases = new float[neuronsNumber];
+		for (int j = 0; j < neuronsNumber; j++) {
+			double bias = inputBiases.get(j, 0);
+			for (int i = 0; i < inputsNumber; i++) {
+				final double weight = inputWeights.get(j, i);
+				mInputWeights.set(j, i, (float) (weight * gain.get(i, 0)));
+				bias += weight * (yMin - (double) xOffset.get(i, 0) * gain.get(i, 0));
+			}
+			mInputBiases[j] = (float) bias;
+		}
+
+		mLayerWeights = layerWeights.copy();
+		mLayerBiases = new float[layerBiases.getRows()];
+		for (int j = 0; j < mLayerBiases.length; j++) {
+			mLayerBiases[j] = layerBiases.get(j, 0);
+		}
+		mKeepInputsIndexes = Arrays.copyOf(keepInputsIndexes, keepInputsIndexes.length);
+	}
+
+	/**
+	 * Converts an already configured double precision network.
+	 */
+	public FloatNeuralNetwork(final NeuralNetwork neuralNetwork) {
+		final FusedInputLayer inputLayer = neuralNetwork.getFusedInputLayer();
+		final double[] inputBiases = inputLayer.getBiases();
+		final Vector layerBiases = neuralNetwork.getLayerBiases();
+
+		mInputWeights = FloatMatrix.fromMatrix(inputLayer.getWeights());
+		mInputBiases = new float[inputBiases.length];
+		for (int j = 0; j < inputBiases.length; j++) {
+			mInputBiases[j] = (float) inputBiases[j];
+		}
+		mLayerWeights = FloatMatrix.fromMatrix(neuralNetwork.getLayerWeights());
+		mLayerBiases = new float[layerBiases.getLength()];
+		for (int j = 0; j < mLayerBiases.length; j++) {
+			mLayerBiases[j] = (float) layerBiases.get(j);
+		}
+		mKeepInputsIndexes = Arrays.copyOf(inputLayer.getKeepInputsIndexes(), inputLayer.getKeepInputsIndexes().length);
+	}
+
+	public FloatWorkspace createWorkspace() {
+		return new FloatWorkspace(mInputBiases.length, mLayerBiases.length);
+	}
+
+	public int getOutputsNumber() {
+		return mLayerBiases.length;
+	}
+
+	public float[] calculateOutputs(final float[] inputs) {
+		final float[] outputs = new float[getOutputsNumber()];
+		calculateOutputs(inputs, createWorkspace(), outputs);
+		return outputs;
+	}
+
+	public void calculateOutputs(final float[] inputs, final FloatWorkspace workspace, final float[] outputs) {
+		if (!workspace.fits(mInputBiases.length, mLayerBiases.length)) {
+			throw new IllegalArgumentException("Workspace does not fit neural network");
+		}
+		if (outputs.length != getOutputsNumber()) {
+			throw new IllegalArgumentException("Outputs array does not fit neural network");
+		}
+
+		final float[] hiddenOutputs = workspace.mHiddenOutputs;
+		final float[] inputWeights = mInputWeights.getData();
+		final int[] keepInputsIndexes = mKeepInputsIndexes;
+		for (int j = 0; j < hiddenOutputs.length; j++) {
+			final int row = mInputWeights.index(j, 0);
+			float sum = mInputBiases[j];
+			for (int i = 0; i < keepInputsIndexes.length; i++) {
+				sum += inputWeights[row + i] * inputs[keepInputsIndexes[i]];
+			}
+			hiddenOutputs[j] = sum;
+		}
+		mKernels.tanhSigmoid(hiddenOutputs, 0, hiddenOutputs.length);
+
+		final float[] layerOutputs = workspace.mOutputs;
+		final float[] layerWeights = mLayerWeights.getData();
+		for (int j = 0; j < layerOutputs.length; j++) {
+			final int row = mLayerWeights.index(j, 0);
+			float sum = mLayerBiases[j];
+			for (int i = 0; i < hiddenOutputs.length; i++) {
+				sum += layerWeights[row + i] * hiddenOutputs[i];
+			}
+			layerOutputs[j] = sum;
+		}
+
+		mKernels.softMax(layerOutputs, 0, outputs, 0, outputs.length);
+	}
+
+	private static boolean isColumnVector(final FloatMatrix a, final int rows) {
+		return a.getRows() == rows && a.getColumns() == 1;
+	}
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+/**
+ * Scratch buffers for one forward pass of a {@link FloatNeuralNetwork}. Not to be shared between threads.
+ */
+public class FloatWorkspace {
+
+	final float[] mHiddenOutputs;
+	final float[] mOutputs;
+
+	FloatWorkspace(final int inputNeuronsNumber, final int outputsNumber) {
+		mHiddenOutputs = new float[inputNeuronsNumber];
+		mOutputs = new float[outputsNumber];
+	}
+
+	boolean fits(final int inputNeuronsNumber, final int outputsNumber) {
+		return mHiddenOutputs.length == inputNeuronsNumber && mOutputs.length == outputsNumber;
+	}
+}
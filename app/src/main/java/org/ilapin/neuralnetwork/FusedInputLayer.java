@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.matrix.SparseMatrix;
+import org.ilapin.matrix.Vector;
+
+/**
+ * Input layer with the keep-index gather, min-max normalization, weights, biases and tanh-sigmoid done
+ * in one sweep per neuron.
+ * <p/>
+ * Normalization {@code (x - xOffset) * gain + yMin} is linear, so it is folded into the layer at
+ * construction: {@code W'[j][i] = W[j][i] * gain[i]} and
+ * {@code b'[j] = b[j] + sum(W[j][i] * (yMin - xOffset[i] * gain[i]))}. A zero raw input then contributes
+ * nothing, which {@link WeightStorage#SPARSE_INPUTS} exploits by skipping it.
+ */
+class FusedInputLayer {
+
+	private final Matrix mWeights; // null when stored sparse
+	private final SparseMatrix mSparseWeights; // null when stored dense
+	private final Matrix mColumnWeights; // folded weights transposed, one row per kept input, or null
+	private final double[] mBiases;
+	private final int[] mKeepInputsIndexes;
+	private final Kernels mKernels = Kernels.getDefault();
+
+	FusedInputLayer(final Matrix weights,
+					final Vector biases,
+					final Vector xOffset,
+					final Vector gain,
+					final double yMin,
+					final int[] keepInputsIndexes,
+					final WeightStorage storage) {
+		final int neuronsNumber = weights.getRows();
+		final int inputsNumber = weights.getColumns();
+
+		final Matrix foldedWeights = new Matrix(neuronsNumber, inputsNumber);
+		mBiases = new double[neuronsNumber];
+		mKeepInputsIndexes = keepInputsIndexes;
+
+		for (int j = 0; j < neuronsNumber; j++) {
+			double bias = biases.get(j);
+			for (int i = 0; i < inputsNumber; i++) {
+				final double weight = weights.get(j, i);
+				foldedWeights.set(j, i, weight * gain.get(i));
+				bias += weight * (yMin - xOffset.get(i) * gain.get(i));
+			}
+			mBiases[j] = bias;
+		}
+
+		if (storage == WeightStorage.SPARSE) {
+			mWeights = null;
+			mSparseWeights = SparseMatrix.fromMatrix(foldedWeights);
+			mColumnWeights = null;
+		} else if (storage == WeightStorage.SPARSE_INPUTS) {
+			mWeights = null;
+			mSparseWeights = null;
+			mColumnWeights = MatrixUtils.matrixTranspose(foldedWeights);
+		} else {
+			mWeights = foldedWeights;
+			mSparseWeights = null;
+			mColumnWeights = null;
+		}
+	}
+
+	/**
+	 * @param inputs raw, unfiltered and unnormalized network inputs
+	 * @param outputs activations of the layer's neurons, contiguous
+	 */
+	void calculateOutputs(final double[] inputs, final Vector outputs) {
+		if (mSparseWeights != null) {
+			calculateSparseOutputs(inputs, outputs);
+			return;
+		}
+		if (mColumnWeights != null) {
+			accumulateInkedColumns(inputs, 0, outputs.getData(), outputs.getOffset());
+			mKernels.tanhSigmoid(outputs.getData(), outputs.getOffset(), mBiases.length);
+			return;
+		}
+
+		final double[] weights = mWeights.getData();
+
+		for (int j = 0; j < mBiases.length; j++) {
+			final double sum = mBiases[j] + mKernels.gatherDot(weights, mWeights.index(j, 0), inputs, mKeepInputsIndexes);
+			outputs.set(j, Kernels.tanhSigmoid(sum));
+		}
+	}
+
+	/**
+	 * Batched variant: each row of {@code inputs} is one sample, each row of {@code outputs} receives its
+	 * activations. Row-stored weights gather the kept inputs of the whole batch into a temporary matrix first,
+	 * so the product runs as a blocked GEMM that reuses every weight across the batch; column-stored weights
+	 * read the raw inputs directly and need no such copy.
+	 */
+	void calculateOutputsBatch(final Matrix inputs, final Matrix outputs) {
+		final double[] inputsData = inputs.getData();
+
+		if (mColumnWeights != null) {
+			final double[] outputsData = outputs.getData();
+			for (int n = 0; n < inputs.getRows(); n++) {
+				final int outputsRow = outputs.index(n, 0);
+				accumulateInkedColumns(inputsData, inputs.index(n, 0), outputsData, outputsRow);
+				mKernels.tanhSigmoid(outputsData, outputsRow, mBiases.length);
+			}
+			return;
+		}
+
+		final int[] keepInputsIndexes = mKeepInputsIndexes;
+		final Matrix gatheredInputs = new Matrix(inputs.getRows(), keepInputsIndexes.length);
+		final double[] gatheredData = gatheredInputs.getData();
+
+		for (int n = 0; n < inputs.getRows(); n++) {
+			final int inputsRow = inputs.index(n, 0);
+			final int gatheredRow = gatheredInputs.index(n, 0);
+			for (int i = 0; i < keepInputsIndexes.length; i++) {
+				gatheredData[gatheredRow + i] = inputsData[inputsRow + keepInputsIndexes[i]];
+			}
+		}
+
+		if (mSparseWeights != null) {
+			MatrixUtils.matrixMultiplyTransposed(gatheredInputs, mSparseWeights, outputs);
+		} else {
+			MatrixUtils.matrixMultiplyTransposed(gatheredInputs, mWeights, outputs);
+		}
+
+		final double[] outputsData = outputs.getData();
+		for (int n = 0; n < outputs.getRows(); n++) {
+			final int outputsRow = outputs.index(n, 0);
+			mKernels.add(outputsData, outputsRow, mBiases, 0, outputsData, outputsRow, mBiases.length);
+			mKernels.tanhSigmoid(outputsData, outputsRow, mBiases.length);
+		}
+	}
+
+	private void calculateSparseOutputs(final double[] inputs, final Vector outputs) {
+		final int[] rowStarts = mSparseWeights.getRowStarts();
+		final int[] columnIndexes = mSparseWeights.getColumnIndexes();
+		final double[] values = mSparseWeights.getValues();
+		final int[] keepInputsIndexes = mKeepInputsIndexes;
+
+		for (int j = 0; j < mBiases.length; j++) {
+			double sum = mBiases[j];
+			for (int p = rowStarts[j]; p < rowStarts[j + 1]; p++) {
+				sum += values[p] * inputs[keepInputsIndexes[columnIndexes[p]]];
+			}
+			outputs.set(j, Kernels.tanhSigmoid(sum));
+		}
+	}
+
+	/**
+	 * y = b' + sum of the weight columns of the non-zero kept inputs, each scaled by its input.
+	 */
+	private void accumulateInkedColumns(final double[] inputs, final int inputsOffset,
+										final double[] y, final int yOffset) {
+		final double[] columnWeights = mColumnWeights.getData();
+		final int[] keepInputsIndexes = mKeepInputsIndexes;
+		final int neuronsNumber = mBiases.length;
+
+		System.arraycopy(mBiases, 0, y, yOffset, neuronsNumber);
+		for (int i = 0; i < keepInputsIndexes.length; i++) {
+			final double input = inputs[inputsOffset + keepInputsIndexes[i]];
+			if (input != 0) {
+				mKernels.axpy(input, columnWeights, mColumnWeights.index(i, 0), y, yOffset, neuronsNumber);
+			}
+		}
+	}
+
+	/**
+	 * Folded weights as a dense row-major matrix, built from the stored ones if needed.
+	 */
+	Matrix getWeights() {
+		if (mWeights != null) {
+			return mWeights;
+		}
+		return mSparseWeights != null ? mSparseWeights.toMatrix() : MatrixUtils.matrixTranspose(mColumnWeights);
+	}
+
+	double[] getBiases() {
+		return mBiases;
+	}
+
+	int[] getKeepInputsIndexes() {
+		return mKeepInputsIndexes;
+	}
+
+	int getNeuronsNumber() {
+		return mBiases.length;
+	}
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Magnitude pruning: zeroes the weights with the smallest absolute values, which usually costs little
+ * accuracy and lets a layer use {@link WeightStorage#SPARSE}. Check the effect of a given sparsity with
+ * {@link OutputsComparison} against the unpruned network.
+ */
+public class MagnitudePruner {
+
+	/**
+	 * @param sparsity share of weights to zero, in [0, 1]; weights tied with the last pruned magnitude are
+	 *                 zeroed as well
+	 * @return pruned copy of {@code weights}
+	 */
+	public static Matrix prune(final Matrix weights, final double sparsity) {
+		if (sparsity < 0 || sparsity > 1) {
+			throw new IllegalArgumentException("Sparsity is out of [0, 1]: " + sparsity);
+		}
+
+		final Matrix pruned = weights.copy();
+		final int prunedNumber = (int) Math.round(sparsity * weights.getRows() * weights.getColumns());
+		if (prunedNumber == 0) {
+			return pruned;
+		}
+
+		final double[] magnitudes = new double[weights.getRows() * weights.getColumns()];
+		for (int i = 0; i < weights.getRows(); i++) {
+			for (int j = 0; j < weights.getColumns(); j++) {
+				magnitudes[i * weights.getColumns() + j] = Math.abs(weights.get(i, j));
+			}
+		}
+		Arrays.sort(magnitudes);
+		final double threshold = magnitudes[prunedNumber - 1];
+
+		for (int i = 0; i < pruned.getRows(); i++) {
+			for (int j = 0; j < pruned.getColumns(); j++) {
+				if (Math.abs(pruned.get(i, j)) <= threshold) {
+					pruned.set(i, j, 0);
+				}
+			}
+		}
+
+		return pruned;
+	}
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process wide registry of loaded networks, keyed by {@link ModelKey}.
+ * <p/>
+ * {@link #acquire(ModelKey)} loads a model at most once however many threads ask for it concurrently and
+ * hands out a {@link Handle} per caller. A model is kept while it has open handles. Released models stay
+ * cached until more than maxModelsNumber models are held, then the least recently acquired released ones
+ * are dropped. Models in use are never dropped, so the cache can go over its bound while they are open.
+ */
+public class ModelCache {
+
+	private final Loader mLoader;
+	private final int mMaxModelsNumber;
+
+	// access ordered, so iteration goes from the least recently acquired entry
+	private final LinkedHashMap<ModelKey, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+	public ModelCache(final Loader loader, final int maxModelsNumber) {
+		if (maxModelsNumber < 1) {
+			throw new IllegalArgumentException("Cache must be able to hold at least one model");
+		}
+
+		mLoader = loader;
+		mMaxModelsNumber = maxModelsNumber;
+	}
+
+	/**
+	 * Returns a handle to the model, loading it on the calling thread if it is not cached yet. Callers
+	 * asking for a model that is being loaded wait for that load instead of starting their own. A failed
+	 * load is reported as RuntimeException and is not cached.
+	 */
+	public Handle acquire(final ModelKey key) {
+		final Entry entry;
+		synchronized (this) {
+			Entry cachedEntry = mEntries.get(key);
+			if (cachedEntry == null) {
+				cachedEntry = new Entry(key);
+				mEntries.put(key, cachedEntry);
+			}
+			cachedEntry.mReferencesNumber++;
+			entry = cachedEntry;
+		}
+
+		// no-op when another thread already runs or ran the load
+		entry.mTask.run();
+
+		try {
+			final NeuralNetwork neuralNetwork = entry.mTask.get();
+			evict();
+			return new Handle(entry, neuralNetwork);
+		} catch (final InterruptedException e) {
+			release(entry);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			synchronized (this) {
+				entry.mReferencesNumber--;
+				if (mEntries.get(key) == entry) {
+					mEntries.remove(key);
+				}
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	public synchronized boolean contains(final ModelKey key) {
+		return mEntries.containsKey(key);
+	}
+
+	/**
+	 * Number of cached models, both in use and released.
+	 */
+	public synchronized int getModelsNumber() {
+		return mEntries.size();
+	}
+
+	/**
+	 * Drops all released models.
+	 */
+	public void trim() {
+		evict(0);
+	}
+
+	private void release(final Entry entry) {
+		synchronized (this) {
+			entry.mReferencesNumber--;
+		}
+		evict();
+	}
+
+	private void evict() {
+		evict(mMaxModelsNumber);
+	}
+
+	private synchronized void evict(final int maxModelsNumber) {
+		final List<ModelKey> evictedKeys = new ArrayList<>();
+		int modelsNumber = mEntries.size();
+
+		final Iterator<Map.Entry<ModelKey, Entry>> iterator = mEntries.entrySet().iterator();
+		while (modelsNumber > maxModelsNumber && iterator.hasNext()) {
+			final Entry entry = iterator.next().getValue();
+			if (entry.mReferencesNumber == 0 && entry.mTask.isDone()) {
+				evictedKeys.add(entry.mKey);
+				modelsNumber--;
+			}
+		}
+
+		for (final ModelKey key : evictedKeys) {
+			mEntries.remove(key);
+		}
+	}
+
+	private class Entry {
+
+		final ModelKey mKey;
+		final FutureTask<NeuralNetwork> mTask;
+		int mReferencesNumber;
+
+		Entry(final ModelKey key) {
+			mKey = key;
+			mTask = new FutureTask<>(new Callable<NeuralNetwork>() {
+
+				@Override
+				public NeuralNetwork call() throws Exception {
+					return mLoader.load(mKey);
+				}
+			});
+		}
+	}
+
+	/**
+	 * One caller's reference to a cached model. Must be closed, once, when the caller no longer uses the
+	 * network; further calls to {@link #close()} do nothing.
+	 */
+	public class Handle implements Closeable {
+
+		private final Entry mEntry;
+		private final NeuralNetwork mNeuralNetwork;
+		private boolean mClosed;
+
+		private Handle(final Entry entry, final NeuralNetwork neuralNetwork) {
+			mEntry = entry;
+			mNeuralNetwork = neuralNetwork;
+		}
+
+		public ModelKey getKey() {
+			return mEntry.mKey;
+		}
+
+		public NeuralNetwork getNeuralNetwork() {
+			synchronized (ModelCache.this) {
+				if (mClosed) {
+					throw new IllegalStateException("Handle is closed");
+				}
+			}
+			return mNeuralNetwork;
+		}
+
+		@Override
+		public void close() {
+			synchronized (ModelCache.this) {
+				if (mClosed) {
+					return;
+				}
+				mClosed = true;
+			}
+			release(mEntry);
+		}
+	}
+
+	/**
+	 * Loads the parameters of a model, e.g. with {@link NeuralNetworkLoader} from a per-model directory.
+	 */
+	public interface Loader {
+
+		NeuralNetwork load(final ModelKey key) throws IOException;
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.MatrixLoader;
+import org.ilapin.matrix.TensorFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Converts the per-file model assets into a single {@link TensorFile}.
+ * <p/>
+ * Usage: {@code ModelFileConverter <assets directory> <output file>}
+ */
+public class ModelFileConverter {
+
+	public static void convert(final File assetsDirectory, final File outputFile) throws IOException {
+		final TensorFile.Writer writer = new TensorFile.Writer();
+
+		for (final String name : NeuralNetworkLoader.PARAMETER_NAMES) {
+			final FileInputStream inputStream = new FileInputStream(new File(assetsDirectory, name));
+			try {
+				writer.add(name, MatrixLoader.loadMatrixBulk(inputStream));
+			} finally {
+				inputStream.close();
+			}
+		}
+
+		writer.writeTo(outputFile);
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: ModelFileConverter <assets directory> <output file>");
+			System.exit(1);
+		}
+
+		convert(new File(args[0]), new File(args[1]));
+	}
+}
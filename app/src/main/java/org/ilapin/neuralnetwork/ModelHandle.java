@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current version of a model, replaceable while inference is running.
+ * <p/>
+ * Callers take a {@link Lease} for the duration of one request and score against the network it holds.
+ * {@link #swap(NeuralNetwork)} publishes a new version with one atomic reference update: requests already
+ * holding a lease finish on the old version, new leases get the new one, and the old version is released
+ * when its last lease is closed. Nothing blocks on a swap.
+ */
+public class ModelHandle {
+
+	private final NeuralNetworkProvider mInitialProvider;
+	private final AtomicReference<Version> mCurrentVersion = new AtomicReference<>();
+	private final AtomicLong mLastVersionNumber = new AtomicLong();
+
+	/**
+	 * The first version is taken from {@code initialProvider} when it is first needed, unless a version is
+	 * swapped in before that.
+	 */
+	public ModelHandle(final NeuralNetworkProvider initialProvider) {
+		mInitialProvider = initialProvider;
+	}
+
+	public ModelHandle(final NeuralNetwork neuralNetwork) {
+		mInitialProvider = null;
+		mCurrentVersion.set(new Version(neuralNetwork, null, mLastVersionNumber.incrementAndGet()));
+	}
+
+	/**
+	 * Leases the current version, waiting for the initial provider if nothing has been published yet.
+	 */
+	public Lease acquire() {
+		while (true) {
+			final Version version = mCurrentVersion.get();
+			if (version == null) {
+				final Version initialVersion =
+						new Version(mInitialProvider.get(), null, mLastVersionNumber.incrementAndGet());
+				mCurrentVersion.compareAndSet(null, initialVersion);
+			} else if (version.retain()) {
+				return new Lease(version);
+			}
+		}
+	}
+
+	public void swap(final NeuralNetwork neuralNetwork) {
+		publish(new Version(neuralNetwork, null, mLastVersionNumber.incrementAndGet()));
+	}
+
+	/**
+	 * Publishes the model held by a {@link ModelCache} handle. The handle is closed once the version is
+	 * replaced and drained, so the cache can evict it.
+	 */
+	public void swap(final ModelCache.Handle cacheHandle) {
+		publish(new Version(cacheHandle.getNeuralNetwork(), cacheHandle, mLastVersionNumber.incrementAndGet()));
+	}
+
+	/**
+	 * Loads a new version on {@code executor} and swaps it in when it is ready. Inference keeps running on
+	 * the current version meanwhile. If loading fails the current version stays and the future reports the
+	 * error.
+	 */
+	public Future<NeuralNetwork> swapAsync(final Callable<NeuralNetwork> loader, final Executor executor) {
+		final FutureTask<NeuralNetwork> task = new FutureTask<>(new Callable<NeuralNetwork>() {
+
+			@Override
+			public NeuralNetwork call() throws Exception {
+				final NeuralNetwork neuralNetwork = loader.call();
+				swap(neuralNetwork);
+				return neuralNetwork;
+			}
+		});
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * @return number of the current version, increasing with every published version, or 0 if nothing has
+	 * been published yet
+	 */
+	public long getVersionNumber() {
+		final Version version = mCurrentVersion.get();
+		return version == null ? 0 : version.mNumber;
+	}
+
+	private void publish(final Version version) {
+		final Version previousVersion = mCurrentVersion.getAndSet(version);
+		if (previousVersion != null) {
+			previousVersion.release();
+		}
+	}
+
+	private static class Version {
+
+		final NeuralNetwork mNeuralNetwork;
+		final ModelCache.Handle mCacheHandle;
+		final long mNumber;
+
+		// one reference is held by the handle while the version is current, one by each open lease
+		final AtomicInteger mReferencesNumber = new AtomicInteger(1);
+
+		Version(final NeuralNetwork neuralNetwork, final ModelCache.Handle cacheHandle, final long number) {
+			mNeuralNetwork = neuralNetwork;
+			mCacheHandle = cacheHandle;
+			mNumber = number;
+		}
+
+		/**
+		 * @return false if the version has already been drained and must not be used
+		 */
+		boolean retain() {
+			while (true) {
+				final int referencesNumber = mReferencesNumber.get();
+				if (referencesNumber == 0) {
+					return false;
+				}
+				if (mReferencesNumber.compareAndSet(referencesNumber, referencesNumber + 1)) {
+					return true;
+				}
+			}
+		}
+
+		void release() {
+			if (mReferencesNumber.decrementAndGet() == 0 && mCacheHandle != null) {
+				mCacheHandle.close();
+			}
+		}
+	}
+
+	/**
+	 * Use of one model version by one request. Must be closed when the request is done; further calls to
+	 * {@link #close()} do nothing.
+	 */
+	public static class Lease implements Closeable {
+
+		private final Version mVersion;
+		private final AtomicBoolean mClosed = new AtomicBoolean();
+
+		private Lease(final Version version) {
+			mVersion = version;
+		}
+
+		public NeuralNetwork getNeuralNetwork() {
+			if (mClosed.get()) {
+				throw new IllegalStateException("Lease is closed");
+			}
+
+			return mVersion.mNeuralNetwork;
+		}
+
+		public long getVersionNumber() {
+			return mVersion.mNumber;
+		}
+
+		@Override
+		public void close() {
+			if (mClosed.compareAndSet(false, true)) {
+				mVersion.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+/**
+ * Identity of a model: what it recognizes (e.g. "digits") and which version of its parameters.
+ */
+public final class ModelKey {
+
+	private final String mId;
+	private final int mVersion;
+
+	public ModelKey(final String id, final int version) {
+		if (id == null) {
+			throw new IllegalArgumentException("Model id is null");
+		}
+
+		mId = id;
+		mVersion = version;
+	}
+
+	public String getId() {
+		return mId;
+	}
+
+	public int getVersion() {
+		return mVersion;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ModelKey)) {
+			return false;
+		}
+
+		final ModelKey modelKey = (ModelKey) o;
+		return mVersion == modelKey.mVersion && mId.equals(modelKey.mId);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * mId.hashCode() + mVersion;
+	}
+
+	@Override
+	public String toString() {
+		return mId + ":" + mVersion;
+	}
+}
@@ -15,196 +15,298 @@
  *******************************************************************************/
 package org.ilapin.neuralnetwork;
 
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Matrix;
 import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.matrix.ParallelExecution;
+import org.ilapin.matrix.SparseMatrix;
+import org.ilapin.matrix.Vector;
 
 import java.util.Arrays;
 
+/**
+ * Two layer digit recognition network. Instances are immutable and are created by {@link Builder}, which
+ * validates the parameters, copies them and folds the input normalization into the input layer once. All
+ * fields are final, so a network can be shared between threads without locking; scratch buffers live in a
+ * {@link Workspace} per caller, or per thread with {@link #calculateOutputs(double[], double[])}.
+ */
 public class NeuralNetwork {
 
-	private final double[][] mInputWeights;
-	private final double[][] mInputBiases; // column vector
-	private final double[][] mLayerWeights;
-	private final double[][] mLayerBiases; // column vector
-	private final double[][] mXOffset; // column vector
-	private final double[][] mGain; // column vector
-	private final int[] mKeepInputsIndexes;
+	private final FusedInputLayer mInputLayer;
+	private final Matrix mLayerWeights; // null when stored sparse
+	private final SparseMatrix mSparseLayerWeights; // null when stored dense
+	private final Vector mLayerBiases;
+	private final Kernels mKernels = Kernels.getDefault();
 
-	private double mYMin;
+	private final ThreadLocal<Workspace> mThreadWorkspace = new ThreadLocal<Workspace>() {
 
-	public NeuralNetwork(final int inputsNumber,
-						 final int inputNeuronsNumber,
-						 final int outputsNumber, final int[] keepInputsIndexes) {
-		if (inputsNumber <= 0) {
-			throw new IllegalArgumentException("Inputs number is less than or equal to zero");
+		@Override
+		protected Workspace initialValue() {
+			return createWorkspace();
 		}
-		if (inputNeuronsNumber <= 0) {
-			throw new IllegalArgumentException("Input layer's neurons number is less than or equal to zero");
-		}
-		if (outputsNumber <= 0) {
-			throw new IllegalArgumentException("Outputs number is less than or equal to zero");
-		}
-
-		mInputWeights = new double[inputNeuronsNumber][inputsNumber];
-		mInputBiases = new double[inputNeuronsNumber][1];
-		mLayerWeights = new double[outputsNumber][inputNeuronsNumber];
-		mLayerBiases = new double[outputsNumber][1];
-		mXOffset = new double[inputsNumber][1];
-		mGain = new double[inputsNumber][1];
-		mKeepInputsIndexes = Arrays.copyOf(keepInputsIndexes, keepInputsIndexes.length);
+	};
+
+	private NeuralNetwork(final FusedInputLayer inputLayer,
+						  final Matrix layerWeights,
+						  final SparseMatrix sparseLayerWeights,
+						  final Vector layerBiases) {
+		mInputLayer = inputLayer;
+		mLayerWeights = layerWeights;
+		mSparseLayerWeights = sparseLayerWeights;
+		mLayerBiases = layerBiases;
 	}
 
-	public double[] calculateOutputs(final double[] inputs) {
-		final double[][] filteredInputs = new double[mKeepInputsIndexes.length][1];
-		for (int i = 0; i < filteredInputs.length; i++) {
-			filteredInputs[i][0] = inputs[mKeepInputsIndexes[i]];
-		}
+	public Workspace createWorkspace() {
+		return new Workspace(mInputLayer.getNeuronsNumber(), mLayerBiases.getLength());
+	}
 
-		final double[][] normalizedInputs = minMaxApply(filteredInputs, mGain, mXOffset, mYMin);
-		final double[][] a1 = sigmoidApply(
-				MatrixUtils.matrixSum(mInputBiases, MatrixUtils.matrixMultiply(mInputWeights, normalizedInputs))
-		);
-		final double[][] a2 = softMaxApply(
-				MatrixUtils.matrixSum(mLayerBiases, MatrixUtils.matrixMultiply(mLayerWeights, a1))
-		);
+	public int getOutputsNumber() {
+		return mLayerBiases.getLength();
+	}
 
-		return MatrixUtils.matrixToVectorArray(a2);
+	public double[] calculateOutputs(final double[] inputs) {
+		final double[] outputs = new double[getOutputsNumber()];
+		calculateOutputs(inputs, outputs);
+		return outputs;
 	}
 
-	public void setYMin(final double yMin) {
-		mYMin = yMin;
+	/**
+	 * Uses a workspace owned by the calling thread, so any number of threads can score against this
+	 * network concurrently without passing workspaces around.
+	 */
+	public void calculateOutputs(final double[] inputs, final double[] outputs) {
+		calculateOutputs(inputs, mThreadWorkspace.get(), outputs);
 	}
 
-	public void setInputsWeights(final double[][] inputWeights) {
-		if (mInputWeights.length != inputWeights.length || mInputWeights[0].length != inputWeights[0].length) {
-			final String msg = String.format(
-					"Input weights do not fit neural network. Expected rows: %d; columns: %d. Actual rows: %d; columns: %d",
-					mInputWeights.length, mInputWeights[0].length,
-					inputWeights.length, inputWeights[0].length
-			);
-			throw new IllegalArgumentException(msg);
+	/**
+	 * Same as {@link #calculateOutputs(double[])} but keeps all intermediate results in the given
+	 * workspace and writes the result to {@code outputs}, so it does not allocate.
+	 */
+	public void calculateOutputs(final double[] inputs, final Workspace workspace, final double[] outputs) {
+		if (!workspace.fits(mInputLayer.getNeuronsNumber(), mLayerBiases.getLength())) {
+			throw new IllegalArgumentException("Workspace does not fit neural network");
 		}
-
-		for (int i = 0; i < mInputWeights.length; i++) {
-			System.arraycopy(inputWeights[i], 0, mInputWeights[i], 0, mInputWeights[i].length);
+		if (outputs.length != getOutputsNumber()) {
+			throw new IllegalArgumentException("Outputs array does not fit neural network");
 		}
-	}
 
-	public void setLayerWeights(final double[][] layerWeights) {
-		if (mLayerWeights.length != layerWeights.length || mLayerWeights[0].length != layerWeights[0].length) {
-			throw new IllegalArgumentException("Layer weights do not fit neural network");
-		}
+		final Vector a1 = workspace.mHiddenOutputs;
+		mInputLayer.calculateOutputs(inputs, a1);
 
-		for (int i = 0; i < mLayerWeights.length; i++) {
-			System.arraycopy(layerWeights[i], 0, mLayerWeights[i], 0, mLayerWeights[i].length);
+		final Vector n2 = workspace.mOutputs;
+		if (mSparseLayerWeights != null) {
+			MatrixUtils.matrixVectorMultiply(mSparseLayerWeights, a1, n2);
+		} else {
+			MatrixUtils.matrixVectorMultiply(mLayerWeights, a1, n2);
 		}
+		MatrixUtils.vectorSum(mLayerBiases, n2, n2);
+		mKernels.softMax(n2.getData(), n2.getOffset(), outputs, 0, outputs.length);
 	}
 
-	public void setXOffset(final double[][] xOffset) {  // column vector
-		if (mXOffset.length != xOffset.length || mXOffset[0].length != xOffset[0].length) {
-			throw new IllegalArgumentException("X offsets do not fit neural network");
-		}
-
-		copyColumnVector(xOffset, mXOffset);
+	public Matrix calculateOutputsBatch(final Matrix inputs) {
+		final Matrix outputs = new Matrix(inputs.getRows(), getOutputsNumber());
+		calculateOutputsBatch(inputs, outputs);
+		return outputs;
 	}
 
-	public void setGain(final double[][] gain) {
-		if (mGain.length != gain.length || mGain[0].length != gain[0].length) {
-			throw new IllegalArgumentException("Gains do not fit neural network");
+	/**
+	 * Scores every row of {@code inputs} (one sample per row) and writes the outputs for sample n to row n
+	 * of {@code outputs}. Both layers run as matrix-matrix products, so weights are loaded from memory
+	 * once per batch rather than once per sample.
+	 */
+	public void calculateOutputsBatch(final Matrix inputs, final Matrix outputs) {
+		if (outputs.getRows() != inputs.getRows() || outputs.getColumns() != getOutputsNumber()) {
+			throw new IllegalArgumentException("Outputs matrix does not fit inputs and neural network");
 		}
 
-		copyColumnVector(gain, mGain);
-	}
+		final int samplesNumber = inputs.getRows();
+		final Matrix a1 = new Matrix(samplesNumber, mInputLayer.getNeuronsNumber());
+		mInputLayer.calculateOutputsBatch(inputs, a1);
 
-	public void setInputBiases(final double[][] biases) { // column vector
-		if (mInputBiases.length != biases.length || mInputBiases[0].length != biases[0].length) {
-			throw new IllegalArgumentException("Input biases not fit neural network");
+		if (mSparseLayerWeights != null) {
+			MatrixUtils.matrixMultiplyTransposed(a1, mSparseLayerWeights, outputs);
+		} else {
+			MatrixUtils.matrixMultiplyTransposed(a1, mLayerWeights, outputs);
+		}
+		final double[] outputsData = outputs.getData();
+		for (int n = 0; n < samplesNumber; n++) {
+			final int row = outputs.index(n, 0);
+			for (int j = 0; j < outputs.getColumns(); j++) {
+				outputsData[row + j] += mLayerBiases.get(j);
+			}
+			mKernels.softMax(outputsData, row, outputsData, row, outputs.getColumns());
 		}
-
-		copyColumnVector(biases, mInputBiases);
 	}
 
-	public void setLayerBiases(final double[][] biases) {
-		if (mLayerBiases.length != biases.length || mLayerBiases[0].length != biases[0].length) {
-			throw new IllegalArgumentException("Layer biases not fit neural network");
+	/**
+	 * Parallel {@link #calculateOutputsBatch(Matrix, Matrix)}: samples are split into blocks scored on
+	 * separate tasks. Batches smaller than the sequential threshold of {@code parallelExecution} run on the
+	 * calling thread.
+	 */
+	public void calculateOutputsBatch(final Matrix inputs, final Matrix outputs,
+									  final ParallelExecution parallelExecution) {
+		if (outputs.getRows() != inputs.getRows() || outputs.getColumns() != getOutputsNumber()) {
+			throw new IllegalArgumentException("Outputs matrix does not fit inputs and neural network");
 		}
 
-		copyColumnVector(biases, mLayerBiases);
-	}
+		final long workPerSample = (long) mInputLayer.getNeuronsNumber() * mInputLayer.getKeepInputsIndexes().length +
+				(long) mLayerBiases.getLength() * mInputLayer.getNeuronsNumber();
+		parallelExecution.forEachRange(inputs.getRows(), workPerSample, new ParallelExecution.RangeTask() {
 
-	private double[][] minMaxApply(final double[][] x, // column vector
-								   final double[][] gain, // column vector
-								   final double[][] xOffset, // column vector
-								   final double yMin) {
-		final double[][] y = new double[x.length][1];
+			@Override
+			public void run(final int from, final int to) {
+				calculateOutputsBatch(
+						inputs.view(from, 0, to - from, inputs.getColumns()),
+						outputs.view(from, 0, to - from, outputs.getColumns())
+				);
+			}
+		});
+	}
 
-		for (int i = 0; i < y.length; i++) {
-			y[i][0] = (x[i][0] - xOffset[i][0]) * gain[i][0] + yMin;
-		}
+	FusedInputLayer getFusedInputLayer() {
+		return mInputLayer;
+	}
 
-		return y;
+	/**
+	 * Layer weights as a dense matrix, built from the sparse ones if needed.
+	 */
+	Matrix getLayerWeights() {
+		return mLayerWeights != null ? mLayerWeights : mSparseLayerWeights.toMatrix();
 	}
 
-	private double[][] sigmoidApply(final double[][] x) { // column vector
-		final double[][] y = new double[x.length][1];
+	Vector getLayerBiases() {
+		return mLayerBiases;
+	}
 
-		for (int i = 0; i < y.length; i++) {
-			y[i][0] = sigmoid(x[i][0]);
+	/**
+	 * Collects the network parameters. Matrices are copied by {@link #build()}, so a builder can be reused
+	 * and changing the matrices afterwards does not affect built networks.
+	 */
+	public static class Builder {
+
+		private Matrix mInputWeights;
+		private Matrix mInputBiases;
+		private Matrix mLayerWeights;
+		private Matrix mLayerBiases;
+		private Matrix mXOffset;
+		private Matrix mGain;
+		private int[] mKeepInputsIndexes;
+		private double mYMin;
+		private WeightStorage mInputWeightsStorage = WeightStorage.DENSE;
+		private WeightStorage mLayerWeightsStorage = WeightStorage.DENSE;
+
+		public Builder setInputWeights(final Matrix inputWeights) {
+			mInputWeights = inputWeights;
+			return this;
 		}
 
-		return y;
-	}
+		public Builder setInputBiases(final Matrix inputBiases) { // column vector
+			mInputBiases = inputBiases;
+			return this;
+		}
 
-	private double[][] softMaxApply(final double x[][]) { // column vector
-		final double[][] y = new double[x.length][1];
-		final double[][] numerator = new double[x.length][1];
+		public Builder setLayerWeights(final Matrix layerWeights) {
+			mLayerWeights = layerWeights;
+			return this;
+		}
 
-		final double maxValue = findMax(x);
-		for (int i = 0; i < y.length; i++) {
-			y[i][0] = x[i][0] - maxValue;
-			numerator[i][0] = Math.exp(y[i][0]);
+		public Builder setLayerBiases(final Matrix layerBiases) { // column vector
+			mLayerBiases = layerBiases;
+			return this;
 		}
 
-		double denominator = calculateSum(numerator);
-		if (denominator == 0) {
-			denominator = 1;
+		public Builder setXOffset(final Matrix xOffset) { // column vector
+			mXOffset = xOffset;
+			return this;
 		}
 
-		for (int i = 0; i < y.length; i++) {
-			y[i][0] = numerator[i][0] / denominator;
+		public Builder setGain(final Matrix gain) { // column vector
+			mGain = gain;
+			return this;
 		}
 
-		return y;
-	}
+		public Builder setKeepInputsIndexes(final int[] keepInputsIndexes) {
+			mKeepInputsIndexes = keepInputsIndexes;
+			return this;
+		}
 
-	private double sigmoid(final double x) {
-		return 2.0 / (1 + Math.exp(-2 * x)) - 1;
-	}
+		public Builder setYMin(final double yMin) {
+			mYMin = yMin;
+			return this;
+		}
 
-	private double findMax(final double[][] x) { // column vector
-		double max = Double.MIN_VALUE;
+		/**
+		 * Storage of the input layer weights after normalization is folded into them, dense by default.
+		 */
+		public Builder setInputWeightsStorage(final WeightStorage storage) {
+			mInputWeightsStorage = storage;
+			return this;
+		}
 
-		for (final double[] currentX : x) {
-			if (currentX[0] > max) {
-				max = currentX[0];
+		/**
+		 * Storage of the output layer weights, dense by default. {@link WeightStorage#SPARSE_INPUTS} does
+		 * not apply, hidden activations are almost never zero.
+		 */
+		public Builder setLayerWeightsStorage(final WeightStorage storage) {
+			if (storage == WeightStorage.SPARSE_INPUTS) {
+				throw new IllegalArgumentException("Output layer weights can't be stored for sparse inputs");
 			}
+			mLayerWeightsStorage = storage;
+			return this;
 		}
 
-		return max;
-	}
+		public NeuralNetwork build() {
+			if (mInputWeights == null || mInputBiases == null || mLayerWeights == null || mLayerBiases == null ||
+					mXOffset == null || mGain == null || mKeepInputsIndexes == null) {
+				throw new IllegalArgumentException("Not all neural network parameters are set");
+			}
 
-	private double calculateSum(final double[][] x) { // column vector
-		double sum = 0;
+			final int inputsNumber = mInputWeights.getColumns();
+			final int inputNeuronsNumber = mInputWeights.getRows();
+			final int outputsNumber = mLayerWeights.getRows();
+			if (mKeepInputsIndexes.length != inputsNumber) {
+				final String msg = String.format(
+						"Input weights do not fit keep inputs indexes. Expected columns: %d. Actual columns: %d",
+						mKeepInputsIndexes.length, inputsNumber
+				);
+				throw new IllegalArgumentException(msg);
+			}
+			if (!isColumnVector(mXOffset, inputsNumber)) {
+				throw new IllegalArgumentException("X offsets do not fit neural network");
+			}
+			if (!isColumnVector(mGain, inputsNumber)) {
+				throw new IllegalArgumentException("Gains do not fit neural network");
+			}
+			if (!isColumnVector(mInputBiases, inputNeuronsNumber)) {
+				throw new IllegalArgumentException("Input biases not fit neural network");
+			}
+			if (mLayerWeights.getColumns() != inputNeuronsNumber) {
+				throw new IllegalArgumentException("Layer weights do not fit neural network");
+			}
+			if (!isColumnVector(mLayerBiases, outputsNumber)) {
+				throw new IllegalArgumentException("Layer biases not fit neural network");
+			}
 
-		for (final double[] currentX : x) {
-			sum += currentX[0];
+			final FusedInputLayer inputLayer = new FusedInputLayer(
+					mInputWeights,
+					mInputBiases.column(0),
+					mXOffset.column(0),
+					mGain.column(0),
+					mYMin,
+					Arrays.copyOf(mKeepInputsIndexes, mKeepInputsIndexes.length),
+					mInputWeightsStorage
+			);
+			if (mLayerWeightsStorage == WeightStorage.SPARSE) {
+				return new NeuralNetwork(
+						inputLayer, null, SparseMatrix.fromMatrix(mLayerWeights), mLayerBiases.column(0).copy()
+				);
+			} else {
+				return new NeuralNetwork(inputLayer, mLayerWeights.copy(), null, mLayerBiases.column(0).copy());
+			}
 		}
 
-		return sum;
-	}
-
-	private void copyColumnVector(final double[][] src, final double[][] dst) { // column vector
-		for (int i = 0; i < dst.length; i++) {
-			dst[i][0] = src[i][0];
+		private static boolean isColumnVector(final Matrix a, final int rows) {
+			return a.getRows() == rows && a.getColumns() == 1;
 		}
 	}
 }
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixLoader;
+import org.ilapin.matrix.TensorFile;
+import org.ilapin.neuralnetwork.graph.Activation;
+import org.ilapin.neuralnetwork.graph.ActivationStage;
+import org.ilapin.neuralnetwork.graph.DenseStage;
+import org.ilapin.neuralnetwork.graph.GatherStage;
+import org.ilapin.neuralnetwork.graph.LayerGraph;
+import org.ilapin.neuralnetwork.graph.NormalizationStage;
+import org.ilapin.neuralnetwork.graph.SoftMaxStage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Builds the digit recognition network from its seven parameter matrices, either stored one per file in
+ * the {@link MatrixLoader} format or together in a {@link TensorFile}.
+ */
+public class NeuralNetworkLoader {
+
+	public static final String INPUT_LAYER_WEIGHTS = "input_layer_weights";
+	public static final String LAYER_WEIGHTS = "layer_weights";
+	public static final String INPUT_BIASES = "input_biases";
+	public static final String LAYER_BIASES = "layer_biases";
+	public static final String GAIN = "gain";
+	public static final String KEEP = "keep";
+	public static final String X_OFFSET = "xoffset";
+
+	public static final String[] PARAMETER_NAMES = {
+			INPUT_LAYER_WEIGHTS, LAYER_WEIGHTS, INPUT_BIASES, LAYER_BIASES, GAIN, KEEP, X_OFFSET
+	};
+
+	private static final double Y_MIN = -1;
+	private static final int IMAGE_SIZE = 28 * 28;
+
+	public static NeuralNetwork load(final Source source) throws IOException {
+		return create(
+				loadMatrix(source, INPUT_LAYER_WEIGHTS),
+				loadMatrix(source, LAYER_WEIGHTS),
+				loadMatrix(source, INPUT_BIASES),
+				loadMatrix(source, LAYER_BIASES),
+				loadMatrix(source, GAIN),
+				loadMatrix(source, KEEP),
+				loadMatrix(source, X_OFFSET)
+		);
+	}
+
+	public static NeuralNetwork load(final TensorFile tensorFile) {
+		return create(
+				tensorFile.getTensor(INPUT_LAYER_WEIGHTS).toMatrix(),
+				tensorFile.getTensor(LAYER_WEIGHTS).toMatrix(),
+				tensorFile.getTensor(INPUT_BIASES).toMatrix(),
+				tensorFile.getTensor(LAYER_BIASES).toMatrix(),
+				tensorFile.getTensor(GAIN).toMatrix(),
+				tensorFile.getTensor(KEEP).toMatrix(),
+				tensorFile.getTensor(X_OFFSET).toMatrix()
+		);
+	}
+
+	public static NeuralNetwork create(final Matrix inputLayerWeights,
+									   final Matrix layerWeights,
+									   final Matrix inputBiases,
+									   final Matrix layerBiases,
+									   final Matrix gain,
+									   final Matrix keep,
+									   final Matrix xOffset) {
+		return new NeuralNetwork.Builder()
+				.setInputWeights(inputLayerWeights)
+				.setInputBiases(inputBiases)
+				.setLayerWeights(layerWeights)
+				.setLayerBiases(layerBiases)
+				.setXOffset(xOffset)
+				.setGain(gain)
+				.setKeepInputsIndexes(toIndexes(keep))
+				.setYMin(Y_MIN)
+				.build();
+	}
+
+	/**
+	 * The same network as {@link #create}, described as a {@link LayerGraph} of generic stages.
+	 */
+	public static LayerGraph createGraph(final Matrix inputLayerWeights,
+										 final Matrix layerWeights,
+										 final Matrix inputBiases,
+										 final Matrix layerBiases,
+										 final Matrix gain,
+										 final Matrix keep,
+										 final Matrix xOffset) {
+		return new LayerGraph.Builder(IMAGE_SIZE)
+				.add(new GatherStage(toIndexes(keep)))
+				.add(new NormalizationStage(xOffset.column(0), gain.column(0), Y_MIN))
+				.add(new DenseStage(inputLayerWeights, inputBiases.column(0)))
+				.add(new ActivationStage(Activation.TANH_SIGMOID))
+				.add(new DenseStage(layerWeights, layerBiases.column(0)))
+				.add(new SoftMaxStage())
+				.build();
+	}
+
+	private static Matrix loadMatrix(final Source source, final String name) throws IOException {
+		final InputStream inputStream = source.open(name);
+		try {
+			return MatrixLoader.loadMatrixBulk(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static int[] toIndexes(final Matrix keep) {
+		final double[] keepInputsIndexesDoubleArray = keep.asVector().toArray();
+		final int[] keepInputsIndexes = new int[keepInputsIndexesDoubleArray.length];
+		for (int i = 0; i < keepInputsIndexes.length; i++) {
+			keepInputsIndexes[i] = (int) keepInputsIndexesDoubleArray[i];
+		}
+		return keepInputsIndexes;
+	}
+
+	/**
+	 * Opens a parameter matrix by name, e.g. from Android assets or a directory.
+	 */
+	public interface Source {
+
+		InputStream open(final String name) throws IOException;
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads a {@link NeuralNetwork} once, in the background, and hands the same instance to every caller.
+ * <p/>
+ * {@link #start()} submits the loading to the executor and can be called any number of times from any
+ * thread, only the first call after construction (or after {@link #get()} reported a failed load) has an
+ * effect.
+ */
+public class NeuralNetworkProvider {
+
+	private final Callable<NeuralNetwork> mLoader;
+	private final Executor mExecutor;
+	private final AtomicReference<FutureTask<NeuralNetwork>> mTask = new AtomicReference<>();
+
+	public NeuralNetworkProvider(final Callable<NeuralNetwork> loader, final Executor executor) {
+		mLoader = loader;
+		mExecutor = executor;
+	}
+
+	public static NeuralNetworkProvider fromSource(final NeuralNetworkLoader.Source source, final Executor executor) {
+		return new NeuralNetworkProvider(new Callable<NeuralNetwork>() {
+
+			@Override
+			public NeuralNetwork call() throws Exception {
+				return NeuralNetworkLoader.load(source);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Starts loading if it has not been started yet.
+	 *
+	 * @return future completed with the network, or with the loading error
+	 */
+	public Future<NeuralNetwork> start() {
+		return startTask();
+	}
+
+	/**
+	 * @return true once the network has been loaded successfully
+	 */
+	public boolean isReady() {
+		final FutureTask<NeuralNetwork> task = mTask.get();
+		if (task == null || !task.isDone() || task.isCancelled()) {
+			return false;
+		}
+
+		try {
+			task.get();
+			return true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (final ExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Waits for the network, starting the loading if needed. If the loading is still queued in the executor
+	 * it is run on the calling thread instead, so waiting from a thread of the same executor cannot
+	 * deadlock. A failed load is reported as RuntimeException and is retried by the next call.
+	 */
+	public NeuralNetwork get() {
+		final FutureTask<NeuralNetwork> task = startTask();
+		// no-op when the task is already running or done
+		task.run();
+
+		try {
+			return task.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			mTask.compareAndSet(task, null);
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private FutureTask<NeuralNetwork> startTask() {
+		final FutureTask<NeuralNetwork> currentTask = mTask.get();
+		if (currentTask != null) {
+			return currentTask;
+		}
+
+		final FutureTask<NeuralNetwork> newTask = new FutureTask<>(mLoader);
+		if (!mTask.compareAndSet(null, newTask)) {
+			return startTask();
+		}
+
+		mExecutor.execute(newTask);
+		return newTask;
+	}
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+/**
+ * Accumulates how far an approximate network's outputs are from a reference network's outputs, sample by
+ * sample.
+ */
+public class OutputsComparison {
+
+	private int mSamplesNumber;
+	private int mMatchingDecisionsNumber;
+	private double mMaxAbsoluteDelta;
+	private double mAbsoluteDeltasSum;
+	private long mOutputsNumber;
+
+	public void add(final double[] expectedOutputs, final double[] actualOutputs) {
+		if (expectedOutputs.length != actualOutputs.length) {
+			throw new IllegalArgumentException("Outputs have different lengths");
+		}
+
+		for (int i = 0; i < expectedOutputs.length; i++) {
+			final double delta = Math.abs(expectedOutputs[i] - actualOutputs[i]);
+			mMaxAbsoluteDelta = Math.max(mMaxAbsoluteDelta, delta);
+			mAbsoluteDeltasSum += delta;
+		}
+		mOutputsNumber += expectedOutputs.length;
+
+		if (findMaxIndex(expectedOutputs) == findMaxIndex(actualOutputs)) {
+			mMatchingDecisionsNumber++;
+		}
+		mSamplesNumber++;
+	}
+
+	public int getSamplesNumber() {
+		return mSamplesNumber;
+	}
+
+	public double getMaxAbsoluteDelta() {
+		return mMaxAbsoluteDelta;
+	}
+
+	public double getMeanAbsoluteDelta() {
+		return mOutputsNumber == 0 ? 0 : mAbsoluteDeltasSum / mOutputsNumber;
+	}
+
+	/**
+	 * Share of samples for which both networks picked the same output.
+	 */
+	public double getDecisionAgreement() {
+		return mSamplesNumber == 0 ? 1 : (double) mMatchingDecisionsNumber / mSamplesNumber;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"samples: %d; max delta: %f; mean delta: %f; decision agreement: %f",
+				mSamplesNumber, getMaxAbsoluteDelta(), getMeanAbsoluteDelta(), getDecisionAgreement()
+		);
+	}
+
+	private static int findMaxIndex(final double[] x) {
+		int maxIndex = 0;
+
+		for (int i = 1; i < x.length; i++) {
+			if (x[i] > x[maxIndex]) {
+				maxIndex = i;
+			}
+		}
+
+		return maxIndex;
+	}
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.Vector;
+
+import java.util.Arrays;
+
+/**
+ * int8 version of {@link NeuralNetwork}, quantized from a configured double precision network.
+ * <p/>
+ * Every weight row is quantized symmetrically with its own scale {@code max(|row|) / 127}. Inputs are
+ * quantized per sample the same way, hidden activations lie in [-1, 1] and use the fixed scale 1 / 127.
+ * Dot products accumulate in int and are dequantized only where the bias and activation are applied.
+ */
+public class QuantizedNeuralNetwork {
+
+	private static final int MAX_QUANTIZED_VALUE = 127;
+
+	private final byte[] mInputWeights;
+	private final float[] mInputWeightsScales;
+	private final double[] mInputBiases; // folded
+	private final byte[] mLayerWeights;
+	private final float[] mLayerWeightsScales;
+	private final double[] mLayerBiases;
+	private final int[] mKeepInputsIndexes;
+	private final Kernels mKernels = Kernels.getDefault();
+
+	public QuantizedNeuralNetwork(final NeuralNetwork neuralNetwork) {
+		final FusedInputLayer inputLayer = neuralNetwork.getFusedInputLayer();
+		final Matrix inputWeights = inputLayer.getWeights();
+		final Matrix layerWeights = neuralNetwork.getLayerWeights();
+		final Vector layerBiases = neuralNetwork.getLayerBiases();
+
+		mInputWeights = new byte[inputWeights.getRows() * inputWeights.getColumns()];
+		mInputWeightsScales = new float[inputWeights.getRows()];
+		quantizeRows(inputWeights, mInputWeights, mInputWeightsScales);
+		mInputBiases = Arrays.copyOf(inputLayer.getBiases(), inputLayer.getBiases().length);
+
+		mLayerWeights = new byte[layerWeights.getRows() * layerWeights.getColumns()];
+		mLayerWeightsScales = new float[layerWeights.getRows()];
+		quantizeRows(layerWeights, mLayerWeights, mLayerWeightsScales);
+		mLayerBiases = layerBiases.toArray();
+
+		mKeepInputsIndexes = Arrays.copyOf(inputLayer.getKeepInputsIndexes(), inputLayer.getKeepInputsIndexes().length);
+	}
+
+	public QuantizedWorkspace createWorkspace() {
+		return new QuantizedWorkspace(mKeepInputsIndexes.length, mInputBiases.length, mLayerBiases.length);
+	}
+
+	public int getOutputsNumber() {
+		return mLayerBiases.length;
+	}
+
+	public double[] calculateOutputs(final double[] inputs) {
+		final double[] outputs = new double[getOutputsNumber()];
+		calculateOutputs(inputs, createWorkspace(), outputs);
+		return outputs;
+	}
+
+	public void calculateOutputs(final double[] inputs, final QuantizedWorkspace workspace, final double[] outputs) {
+		if (!workspace.fits(mKeepInputsIndexes.length, mInputBiases.length, mLayerBiases.length)) {
+			throw new IllegalArgumentException("Workspace does not fit neural network");
+		}
+		if (outputs.length != getOutputsNumber()) {
+			throw new IllegalArgumentException("Outputs array does not fit neural network");
+		}
+
+		final byte[] quantizedInputs = workspace.mQuantizedInputs;
+		double maxAbsoluteInput = 0;
+		for (final int index : mKeepInputsIndexes) {
+			maxAbsoluteInput = Math.max(maxAbsoluteInput, Math.abs(inputs[index]));
+		}
+		final double inputsScale = maxAbsoluteInput == 0 ? 1 : maxAbsoluteInput / MAX_QUANTIZED_VALUE;
+		for (int i = 0; i < quantizedInputs.length; i++) {
+			quantizedInputs[i] = (byte) Math.round(inputs[mKeepInputsIndexes[i]] / inputsScale);
+		}
+
+		final byte[] quantizedHiddenOutputs = workspace.mQuantizedHiddenOutputs;
+		for (int j = 0; j < quantizedHiddenOutputs.length; j++) {
+			final int sum = dotProduct(mInputWeights, j * quantizedInputs.length, quantizedInputs);
+			final double hiddenOutput = Kernels.tanhSigmoid(sum * mInputWeightsScales[j] * inputsScale + mInputBiases[j]);
+			quantizedHiddenOutputs[j] = (byte) Math.round(hiddenOutput * MAX_QUANTIZED_VALUE);
+		}
+
+		final double[] layerOutputs = workspace.mOutputs;
+		for (int j = 0; j < layerOutputs.length; j++) {
+			final int sum = dotProduct(mLayerWeights, j * quantizedHiddenOutputs.length, quantizedHiddenOutputs);
+			layerOutputs[j] = sum * (double) mLayerWeightsScales[j] / MAX_QUANTIZED_VALUE + mLayerBiases[j];
+		}
+
+		mKernels.softMax(layerOutputs, 0, outputs, 0, outputs.length);
+	}
+
+	/**
+	 * Bytes taken by the quantized weight matrices, without scales and biases.
+	 */
+	public int getWeightsSize() {
+		return mInputWeights.length + mLayerWeights.length;
+	}
+
+	private static int dotProduct(final byte[] weights, final int offset, final byte[] x) {
+		int sum = 0;
+
+		for (int i = 0; i < x.length; i++) {
+			sum += weights[offset + i] * x[i];
+		}
+
+		return sum;
+	}
+
+	private static void quantizeRows(final Matrix a, final byte[] quantized, final float[] scales) {
+		final int columns = a.getColumns();
+
+		for (int i = 0; i < a.getRows(); i++) {
+			double maxAbsoluteValue = 0;
+			for (int j = 0; j < columns; j++) {
+				maxAbsoluteValue = Math.max(maxAbsoluteValue, Math.abs(a.get(i, j)));
+			}
+
+			final double scale = maxAbsoluteValue == 0 ? 1 : maxAbsoluteValue / MAX_QUANTIZED_VALUE;
+			for (int j = 0; j < columns; j++) {
+				quantized[i * columns + j] = (byte) Math.round(a.get(i, j) / scale);
+			}
+			scales[i] = (float) scale;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Recognition of a drawing started before the drawing is known to be finished, so its result is ready, or
+ * on its way, once it is.
+ * <p/>
+ * All methods are called from one thread, e.g. the main one, and results are delivered through
+ * {@code resultExecutor} (posting to that thread). The recognition itself runs on {@code executor}.
+ * Drawings are identified by a revision the caller bumps on every change.
+ */
+public class SpeculativeRecognition {
+
+	private final Executor mExecutor;
+	private final Executor mResultExecutor;
+
+	// bumped by every start and cancel, runs and results of an older generation are dropped
+	private volatile int mGeneration;
+	private FutureTask<Void> mTask;
+	private int mRevision = -1;
+	private double[] mInputs;
+	private double[] mOutputs;
+	private boolean mFailed;
+	private Listener mListener;
+
+	public SpeculativeRecognition(final Executor executor, final Executor resultExecutor) {
+		mExecutor = executor;
+		mResultExecutor = resultExecutor;
+	}
+
+	/**
+	 * Starts recognizing {@code inputs}, the drawing at {@code revision}, dropping any earlier recognition.
+	 * The inputs must not change afterwards.
+	 */
+	public void start(final ModelHandle modelHandle, final int revision, final double[] inputs) {
+		cancel();
+
+		final int generation = mGeneration;
+		mRevision = revision;
+		mInputs = inputs;
+		mTask = new FutureTask<>(new Runnable() {
+
+			@Override
+			public void run() {
+				if (generation != mGeneration) {
+					return;
+				}
+
+				double[] outputs;
+				try {
+					final ModelHandle.Lease lease = modelHandle.acquire();
+					try {
+						outputs = lease.getNeuralNetwork().calculateOutputs(inputs);
+					} finally {
+						lease.close();
+					}
+				} catch (final RuntimeException e) {
+					// left to the regular recognition to run into again and report
+					outputs = null;
+				}
+
+				final double[] finalOutputs = outputs;
+				mResultExecutor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						onFinished(generation, finalOutputs);
+					}
+				});
+			}
+		}, null);
+		mExecutor.execute(mTask);
+	}
+
+	/**
+	 * Hands the recognition of the drawing at {@code revision} to {@code listener}: right away if it is
+	 * done, when it is done if it still runs. Exactly one listener method is called, unless this returns
+	 * false.
+	 *
+	 * @return false if there is no recognition of that drawing, the caller has to recognize it itself
+	 */
+	public boolean finish(final int revision, final Listener listener) {
+		if (mTask == null || revision != mRevision) {
+			return false;
+		}
+
+		if (mOutputs != null || mFailed) {
+			deliver(listener);
+		} else {
+			mListener = listener;
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the current recognition. A listener waiting for it gets
+	 * {@link Listener#onRecognitionUnavailable()}.
+	 */
+	public void cancel() {
+		final Listener listener = mListener;
+
+		mGeneration++;
+		if (mTask != null) {
+			mTask.cancel(false);
+			mTask = null;
+		}
+		mRevision = -1;
+		mInputs = null;
+		mOutputs = null;
+		mFailed = false;
+		mListener = null;
+
+		if (listener != null) {
+			listener.onRecognitionUnavailable();
+		}
+	}
+
+	private void onFinished(final int generation, final double[] outputs) {
+		if (generation != mGeneration) {
+			return;
+		}
+
+		mOutputs = outputs;
+		mFailed = outputs == null;
+		if (mListener != null) {
+			final Listener listener = mListener;
+			mListener = null;
+			deliver(listener);
+		}
+	}
+
+	private void deliver(final Listener listener) {
+		final double[] inputs = mInputs;
+		final double[] outputs = mOutputs;
+		final boolean failed = mFailed;
+		cancel();
+
+		if (failed) {
+			listener.onRecognitionUnavailable();
+		} else {
+			listener.onRecognized(inputs, outputs);
+		}
+	}
+
+	public interface Listener {
+
+		void onRecognized(final double[] inputs, final double[] outputs);
+
+		/**
+		 * The recognition failed or was cancelled.
+		 */
+		void onRecognitionUnavailable();
+	}
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+/**
+ * How a layer keeps its weights.
+ */
+public enum WeightStorage {
+
+	/**
+	 * Every weight in a row-major {@link org.ilapin.matrix.Matrix}.
+	 */
+	DENSE,
+
+	/**
+	 * Only non-zero weights, in a CSR {@link org.ilapin.matrix.SparseMatrix}. Pays off for weights pruned
+	 * with {@link MagnitudePruner} to well over half zeros.
+	 */
+	SPARSE,
+
+	/**
+	 * Every weight, column-major, so the layer adds up only the columns of its non-zero inputs. Cost follows
+	 * the number of inked pixels rather than the image size. Input layer only.
+	 */
+	SPARSE_INPUTS
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork;
+
+import org.ilapin.matrix.Vector;
+
+/**
+ * Scratch buffers for one forward pass of a {@link NeuralNetwork}. Obtain one with
+ * {@link NeuralNetwork#createWorkspace()} and reuse it between calls; a workspace must not be shared
+ * between threads.
+ */
+public class Workspace {
+
+	final Vector mHiddenOutputs;
+	final Vector mOutputs;
+
+	Workspace(final int inputNeuronsNumber, final int outputsNumber) {
+		mHiddenOutputs = new Vector(inputNeuronsNumber);
+		mOutputs = new Vector(outputsNumber);
+	}
+
+	boolean fits(final int inputNeuronsNumber, final int outputsNumber) {
+		return mHiddenOutputs.getLength() == inputNeuronsNumber &&
+				mOutputs.getLength() == outputsNumber;
+	}
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import org.ilapin.matrix.Kernels;
+
+/**
+ * Element-wise activation functions, applied in place.
+ */
+public enum Activation {
+
+	/**
+	 * 2 / (1 + exp(-2x)) - 1.
+	 */
+	TANH_SIGMOID {
+		@Override
+		void apply(final Kernels kernels, final double[] x, final int offset, final int length) {
+			kernels.tanhSigmoid(x, offset, length);
+		}
+	},
+
+	/**
+	 * max(0, x).
+	 */
+	RELU {
+		@Override
+		void apply(final Kernels kernels, final double[] x, final int offset, final int length) {
+			for (int i = offset; i < offset + length; i++) {
+				if (x[i] < 0) {
+					x[i] = 0;
+				}
+			}
+		}
+	};
+
+	abstract void apply(final Kernels kernels, final double[] x, final int offset, final int length);
+}
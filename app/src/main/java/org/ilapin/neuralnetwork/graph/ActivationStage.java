@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import org.ilapin.matrix.Kernels;
+
+/**
+ * Applies an {@link Activation} to every input. The planner folds it into a directly preceding
+ * {@link DenseStage}.
+ */
+public class ActivationStage extends Stage {
+
+	private final Activation mActivation;
+	private final Kernels mKernels = Kernels.getDefault();
+
+	public ActivationStage(final Activation activation) {
+		mActivation = activation;
+	}
+
+	public Activation getActivation() {
+		return mActivation;
+	}
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		return inputsNumber;
+	}
+
+	@Override
+	public boolean isInPlaceSafe() {
+		return true;
+	}
+
+	/**
+	 * Copies the inputs to the outputs unless the planner runs the stage in place, then activates them.
+	 */
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		if (inputs != outputs) {
+			System.arraycopy(inputs, 0, outputs, 0, outputs.length);
+		}
+		mActivation.apply(mKernels, outputs, 0, outputs.length);
+	}
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.matrix.Vector;
+
+/**
+ * 2D convolution over feature maps stored channel by channel, each channel row by row (CHW). Weights hold
+ * one row per output channel with the kernel laid out as [input channel][kernel row][kernel column].
+ * <p/>
+ * Two algorithms are available:
+ * <ul>
+ * <li>{@link Algorithm#IM2COL} copies every receptive field into a row of a patch matrix and runs one
+ * {@link MatrixUtils#matrixMultiplyTransposed} with the weights, any kernel size, stride and padding;</li>
+ * <li>{@link Algorithm#WINOGRAD} is F(2x2, 3x3): each 4x4 input tile and each kernel are transformed so
+ * that a 2x2 output tile costs 16 multiplications per channel pair instead of 36. Only for 3x3 kernels
+ * with stride 1.</li>
+ * </ul>
+ * By default Winograd is used whenever it applies.
+ */
+public class ConvolutionStage extends Stage {
+
+	public enum Algorithm {
+		IM2COL, WINOGRAD
+	}
+
+	private static final int WINOGRAD_TILE_SIZE = 4;
+	private static final int WINOGRAD_OUTPUT_TILE_SIZE = 2;
+	private static final int WINOGRAD_TILE_LENGTH = WINOGRAD_TILE_SIZE * WINOGRAD_TILE_SIZE;
+
+	private final int mInputChannels;
+	private final int mInputHeight;
+	private final int mInputWidth;
+	private final int mOutputChannels;
+	private final int mOutputHeight;
+	private final int mOutputWidth;
+	private final int mKernelSize;
+	private final int mStride;
+	private final int mPadding;
+	private final Matrix mWeights;
+	private final double[] mBiases;
+	private final Algorithm mAlgorithm;
+
+	// G * g * G^T for every pair of output and input channels, 16 values each
+	private final double[] mTransformedWeights;
+
+	public ConvolutionStage(final int inputChannels, final int inputHeight, final int inputWidth,
+							final Matrix weights, final Vector biases,
+							final int kernelSize, final int stride, final int padding) {
+		this(inputChannels, inputHeight, inputWidth, weights, biases, kernelSize, stride, padding,
+				kernelSize == 3 && stride == 1 ? Algorithm.WINOGRAD : Algorithm.IM2COL);
+	}
+
+	public ConvolutionStage(final int inputChannels, final int inputHeight, final int inputWidth,
+							final Matrix weights, final Vector biases,
+							final int kernelSize, final int stride, final int padding,
+							final Algorithm algorithm) {
+		if (inputChannels <= 0 || inputHeight <= 0 || inputWidth <= 0) {
+			throw new IllegalArgumentException("Input dimensions must be greater than zero");
+		}
+		if (kernelSize <= 0 || stride <= 0 || padding < 0) {
+			throw new IllegalArgumentException("Kernel size and stride must be positive, padding non negative");
+		}
+		if (weights.getColumns() != inputChannels * kernelSize * kernelSize) {
+			throw new IllegalArgumentException("Weights do not fit input channels and kernel size");
+		}
+		if (biases.getLength() != weights.getRows()) {
+			throw new IllegalArgumentException("Biases do not fit weights");
+		}
+		if (inputHeight + 2 * padding < kernelSize || inputWidth + 2 * padding < kernelSize) {
+			throw new IllegalArgumentException("Kernel is bigger than padded input");
+		}
+		if (algorithm == Algorithm.WINOGRAD && (kernelSize != 3 || stride != 1)) {
+			throw new IllegalArgumentException("Winograd convolution needs a 3x3 kernel and stride 1");
+		}
+
+		mInputChannels = inputChannels;
+		mInputHeight = inputHeight;
+		mInputWidth = inputWidth;
+		mOutputChannels = weights.getRows();
+		mOutputHeight = (inputHeight + 2 * padding - kernelSize) / stride + 1;
+		mOutputWidth = (inputWidth + 2 * padding - kernelSize) / stride + 1;
+		mKernelSize = kernelSize;
+		mStride = stride;
+		mPadding = padding;
+		mWeights = weights.copy();
+		mBiases = biases.toArray();
+		mAlgorithm = algorithm;
+		mTransformedWeights = algorithm == Algorithm.WINOGRAD ? transformWeights(mWeights) : null;
+	}
+
+	public int getOutputChannels() {
+		return mOutputChannels;
+	}
+
+	public int getOutputHeight() {
+		return mOutputHeight;
+	}
+
+	public int getOutputWidth() {
+		return mOutputWidth;
+	}
+
+	public Algorithm getAlgorithm() {
+		return mAlgorithm;
+	}
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		if (inputsNumber != mInputChannels * mInputHeight * mInputWidth) {
+			throw new IllegalArgumentException("Convolution does not fit inputs number " + inputsNumber);
+		}
+
+		return mOutputChannels * mOutputHeight * mOutputWidth;
+	}
+
+	@Override
+	public int getScratchSize(final int inputsNumber) {
+		if (mAlgorithm == Algorithm.WINOGRAD) {
+			// transformed input tiles, then the product tile and two tiles for the transforms
+			return (mInputChannels + 3) * WINOGRAD_TILE_LENGTH;
+		} else {
+			return mOutputHeight * mOutputWidth * mWeights.getColumns();
+		}
+	}
+
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		if (mAlgorithm == Algorithm.WINOGRAD) {
+			calculateWinograd(inputs, outputs, scratch);
+		} else {
+			calculateIm2col(inputs, outputs, scratch);
+		}
+	}
+
+	private void calculateIm2col(final double[] inputs, final double[] outputs, final double[] scratch) {
+		final int pixelsNumber = mOutputHeight * mOutputWidth;
+		final int patchLength = mWeights.getColumns();
+
+		int patchIndex = 0;
+		for (int y = 0; y < mOutputHeight; y++) {
+			for (int x = 0; x < mOutputWidth; x++) {
+				for (int c = 0; c < mInputChannels; c++) {
+					final int channelOffset = c * mInputHeight * mInputWidth;
+					for (int ky = 0; ky < mKernelSize; ky++) {
+						final int inputY = y * mStride + ky - mPadding;
+						for (int kx = 0; kx < mKernelSize; kx++) {
+							final int inputX = x * mStride + kx - mPadding;
+							scratch[patchIndex++] = inputY < 0 || inputY >= mInputHeight || inputX < 0 || inputX >= mInputWidth ?
+									0 : inputs[channelOffset + inputY * mInputWidth + inputX];
+						}
+					}
+				}
+			}
+		}
+
+		// one row of outputs per output channel, one column per output pixel
+		MatrixUtils.matrixMultiplyTransposed(
+				mWeights,
+				new Matrix(scratch, 0, pixelsNumber, patchLength, patchLength),
+				new Matrix(outputs, 0, mOutputChannels, pixelsNumber, pixelsNumber)
+		);
+
+		for (int c = 0; c < mOutputChannels; c++) {
+			final double bias = mBiases[c];
+			for (int i = c * pixelsNumber; i < (c + 1) * pixelsNumber; i++) {
+				outputs[i] += bias;
+			}
+		}
+	}
+
+	private void calculateWinograd(final double[] inputs, final double[] outputs, final double[] scratch) {
+		final int transformedInputsOffset = 0;
+		final int productOffset = mInputChannels * WINOGRAD_TILE_LENGTH;
+		final int temporaryOffset = productOffset + WINOGRAD_TILE_LENGTH;
+		final int channelSize = mInputHeight * mInputWidth;
+		final int outputChannelSize = mOutputHeight * mOutputWidth;
+
+		for (int tileY = 0; tileY < mOutputHeight; tileY += WINOGRAD_OUTPUT_TILE_SIZE) {
+			for (int tileX = 0; tileX < mOutputWidth; tileX += WINOGRAD_OUTPUT_TILE_SIZE) {
+				for (int c = 0; c < mInputChannels; c++) {
+					transformInputTile(
+							inputs, c * channelSize, tileY - mPadding, tileX - mPadding,
+							scratch, transformedInputsOffset + c * WINOGRAD_TILE_LENGTH, temporaryOffset
+					);
+				}
+
+				for (int k = 0; k < mOutputChannels; k++) {
+					for (int i = 0; i < WINOGRAD_TILE_LENGTH; i++) {
+						scratch[productOffset + i] = 0;
+					}
+					int weightsIndex = k * mInputChannels * WINOGRAD_TILE_LENGTH;
+					for (int c = 0; c < mInputChannels; c++) {
+						final int tileOffset = transformedInputsOffset + c * WINOGRAD_TILE_LENGTH;
+						for (int i = 0; i < WINOGRAD_TILE_LENGTH; i++) {
+							scratch[productOffset + i] += mTransformedWeights[weightsIndex++] * scratch[tileOffset + i];
+						}
+					}
+
+					writeOutputTile(
+							scratch, productOffset, temporaryOffset, mBiases[k],
+							outputs, k * outputChannelSize, tileY, tileX
+					);
+				}
+			}
+		}
+	}
+
+	/**
+	 * V = B^T * d * B for the 4x4 tile d whose top left corner is (y0, x0), zero outside the input. d and
+	 * the intermediate product use 32 doubles of {@code v} from {@code temporaryOffset}.
+	 */
+	private void transformInputTile(final double[] inputs, final int channelOffset, final int y0, final int x0,
+									final double[] v, final int vOffset, final int temporaryOffset) {
+		final int d = temporaryOffset;
+		for (int i = 0; i < WINOGRAD_TILE_SIZE; i++) {
+			final int y = y0 + i;
+			for (int j = 0; j < WINOGRAD_TILE_SIZE; j++) {
+				final int x = x0 + j;
+				v[d + i * WINOGRAD_TILE_SIZE + j] = y < 0 || y >= mInputHeight || x < 0 || x >= mInputWidth ?
+						0 : inputs[channelOffset + y * mInputWidth + x];
+			}
+		}
+
+		// B^T = [1 0 -1 0; 0 1 1 0; 0 -1 1 0; 0 1 0 -1], applied to columns then to rows
+		final int t = temporaryOffset + WINOGRAD_TILE_LENGTH;
+		for (int j = 0; j < WINOGRAD_TILE_SIZE; j++) {
+			final double d0 = v[d + j], d1 = v[d + 4 + j], d2 = v[d + 8 + j], d3 = v[d + 12 + j];
+			v[t + j] = d0 - d2;
+			v[t + 4 + j] = d1 + d2;
+			v[t + 8 + j] = d2 - d1;
+			v[t + 12 + j] = d1 - d3;
+		}
+		for (int i = 0; i < WINOGRAD_TILE_SIZE; i++) {
+			final int row = i * WINOGRAD_TILE_SIZE;
+			final double t0 = v[t + row], t1 = v[t + row + 1], t2 = v[t + row + 2], t3 = v[t + row + 3];
+			v[vOffset + row] = t0 - t2;
+			v[vOffset + row + 1] = t1 + t2;
+			v[vOffset + row + 2] = t2 - t1;
+			v[vOffset + row + 3] = t1 - t3;
+		}
+	}
+
+	/**
+	 * Y = A^T * m * A with A^T = [1 1 1 0; 0 1 -1 -1], plus bias, clipped at the output border.
+	 */
+	private void writeOutputTile(final double[] m, final int mOffset, final int temporaryOffset, final double bias,
+								 final double[] outputs, final int channelOffset, final int y0, final int x0) {
+		final int t = temporaryOffset;
+		for (int j = 0; j < WINOGRAD_TILE_SIZE; j++) {
+			final double m0 = m[mOffset + j], m1 = m[mOffset + 4 + j], m2 = m[mOffset + 8 + j], m3 = m[mOffset + 12 + j];
+			m[t + j] = m0 + m1 + m2;
+			m[t + 4 + j] = m1 - m2 - m3;
+		}
+		for (int i = 0; i < WINOGRAD_OUTPUT_TILE_SIZE && y0 + i < mOutputHeight; i++) {
+			final int row = t + i * WINOGRAD_TILE_SIZE;
+			final int outputRow = channelOffset + (y0 + i) * mOutputWidth;
+			outputs[outputRow + x0] = m[row] + m[row + 1] + m[row + 2] + bias;
+			if (x0 + 1 < mOutputWidth) {
+				outputs[outputRow + x0 + 1] = m[row + 1] - m[row + 2] - m[row + 3] + bias;
+			}
+		}
+	}
+
+	/**
+	 * U = G * g * G^T with G = [1 0 0; 1/2 1/2 1/2; 1/2 -1/2 1/2; 0 0 1] for every 3x3 kernel g.
+	 */
+	private static double[] transformWeights(final Matrix weights) {
+		final int kernelsNumber = weights.getRows() * weights.getColumns() / 9;
+		final double[] transformedWeights = new double[kernelsNumber * WINOGRAD_TILE_LENGTH];
+		final double[] g = new double[9];
+		final double[] t = new double[12];
+
+		for (int n = 0; n < kernelsNumber; n++) {
+			final int row = n * 9 / weights.getColumns();
+			final int column = n * 9 % weights.getColumns();
+			for (int i = 0; i < 9; i++) {
+				g[i] = weights.get(row, column + i);
+			}
+
+			// t = G * g, 4x3
+			for (int j = 0; j < 3; j++) {
+				final double g0 = g[j], g1 = g[3 + j], g2 = g[6 + j];
+				t[j] = g0;
+				t[3 + j] = (g0 + g1 + g2) / 2;
+				t[6 + j] = (g0 - g1 + g2) / 2;
+				t[9 + j] = g2;
+			}
+			// u = t * G^T, 4x4
+			final int uOffset = n * WINOGRAD_TILE_LENGTH;
+			for (int i = 0; i < 4; i++) {
+				final double t0 = t[i * 3], t1 = t[i * 3 + 1], t2 = t[i * 3 + 2];
+				transformedWeights[uOffset + i * 4] = t0;
+				transformedWeights[uOffset + i * 4 + 1] = (t0 + t1 + t2) / 2;
+				transformedWeights[uOffset + i * 4 + 2] = (t0 - t1 + t2) / 2;
+				transformedWeights[uOffset + i * 4 + 3] = t2;
+			}
+		}
+
+		return transformedWeights;
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.Vector;
+
+/**
+ * Fully connected layer {@code y = W * x + b}.
+ * <p/>
+ * The planner builds fused variants of it: a preceding {@link NormalizationStage} is folded into the
+ * weights and biases, a preceding {@link GatherStage} becomes an index list the dot products read inputs
+ * through, and a following {@link ActivationStage} is applied while the outputs are still in cache.
+ */
+public class DenseStage extends Stage {
+
+	private final Matrix mWeights;
+	private final double[] mBiases;
+	private final int[] mInputsIndexes; // null when inputs are read directly
+	private final Activation mActivation; // null when there is none
+	private final Kernels mKernels = Kernels.getDefault();
+
+	public DenseStage(final Matrix weights, final Vector biases) {
+		this(weights.copy(), biases.toArray(), null, null);
+
+		if (biases.getLength() != weights.getRows()) {
+			throw new IllegalArgumentException("Biases do not fit weights");
+		}
+	}
+
+	DenseStage(final Matrix weights, final double[] biases, final int[] inputsIndexes, final Activation activation) {
+		mWeights = weights;
+		mBiases = biases;
+		mInputsIndexes = inputsIndexes;
+		mActivation = activation;
+	}
+
+	public Matrix getWeights() {
+		return mWeights;
+	}
+
+	double[] getBiases() {
+		return mBiases;
+	}
+
+	boolean hasInputsIndexes() {
+		return mInputsIndexes != null;
+	}
+
+	boolean hasActivation() {
+		return mActivation != null;
+	}
+
+	/**
+	 * {@code (x - xOffset) * gain + yMin} followed by this layer, as one layer:
+	 * {@code W'[j][i] = W[j][i] * gain[i]} and {@code b'[j] = b[j] + sum(W[j][i] * (yMin - xOffset[i] * gain[i]))}.
+	 */
+	DenseStage foldNormalization(final NormalizationStage normalization) {
+		final double[] xOffset = normalization.getXOffset();
+		final double[] gain = normalization.getGain();
+		final double yMin = normalization.getYMin();
+		final int neuronsNumber = mWeights.getRows();
+		final int inputsNumber = mWeights.getColumns();
+
+		final Matrix weights = new Matrix(neuronsNumber, inputsNumber);
+		final double[] biases = new double[neuronsNumber];
+		for (int j = 0; j < neuronsNumber; j++) {
+			double bias = mBiases[j];
+			for (int i = 0; i < inputsNumber; i++) {
+				final double weight = mWeights.get(j, i);
+				weights.set(j, i, weight * gain[i]);
+				bias += weight * (yMin - xOffset[i] * gain[i]);
+			}
+			biases[j] = bias;
+		}
+
+		return new DenseStage(weights, biases, mInputsIndexes, mActivation);
+	}
+
+	DenseStage withInputsIndexes(final int[] inputsIndexes) {
+		return new DenseStage(mWeights, mBiases, inputsIndexes, mActivation);
+	}
+
+	DenseStage withActivation(final Activation activation) {
+		return new DenseStage(mWeights, mBiases, mInputsIndexes, activation);
+	}
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		if (mInputsIndexes != null) {
+			GatherStage.checkIndexes(mInputsIndexes, inputsNumber);
+		} else if (inputsNumber != mWeights.getColumns()) {
+			final String msg = String.format(
+					"Weights do not fit inputs. Expected columns: %d. Actual inputs number: %d",
+					mWeights.getColumns(), inputsNumber
+			);
+			throw new IllegalArgumentException(msg);
+		}
+
+		return mWeights.getRows();
+	}
+
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		final double[] weights = mWeights.getData();
+		final int columns = mWeights.getColumns();
+
+		if (mInputsIndexes == null) {
+			for (int j = 0; j < mBiases.length; j++) {
+				outputs[j] = mBiases[j] + mKernels.dot(weights, mWeights.index(j, 0), inputs, 0, columns);
+			}
+		} else {
+			for (int j = 0; j < mBiases.length; j++) {
+				outputs[j] = mBiases[j] + mKernels.gatherDot(weights, mWeights.index(j, 0), inputs, mInputsIndexes);
+			}
+		}
+
+		if (mActivation != null) {
+			mActivation.apply(mKernels, outputs, 0, outputs.length);
+		}
+	}
+}
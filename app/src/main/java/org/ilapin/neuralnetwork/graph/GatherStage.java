@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import java.util.Arrays;
+
+/**
+ * Picks {@code outputs[i] = inputs[indexes[i]]}. The planner merges it into a directly following
+ * {@link DenseStage}, which then reads the inputs through the indexes without copying them.
+ */
+public class GatherStage extends Stage {
+
+	private final int[] mIndexes;
+
+	public GatherStage(final int[] indexes) {
+		mIndexes = Arrays.copyOf(indexes, indexes.length);
+	}
+
+	int[] getIndexes() {
+		return mIndexes;
+	}
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		checkIndexes(mIndexes, inputsNumber);
+		return mIndexes.length;
+	}
+
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		for (int i = 0; i < mIndexes.length; i++) {
+			outputs[i] = inputs[mIndexes[i]];
+		}
+	}
+
+	static void checkIndexes(final int[] indexes, final int inputsNumber) {
+		for (final int index : indexes) {
+			if (index < 0 || index >= inputsNumber) {
+				throw new IllegalArgumentException("Index " + index + " is out of inputs number " + inputsNumber);
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Planned {@link LayerGraph}: fused stages with every intermediate buffer sized up front. Stages that are
+ * {@link Stage#isInPlaceSafe() safe in place} run in their predecessor's buffer, the last stage writes
+ * straight to the caller's outputs. Plans are immutable and can be shared between threads, each thread
+ * scoring with its own {@link GraphWorkspace}.
+ */
+public class GraphPlan {
+
+	private static final int CALLER_INPUTS = -1;
+	private static final int CALLER_OUTPUTS = -2;
+
+	private final int mInputsNumber;
+	private final int mOutputsNumber;
+	private final Stage[] mStages;
+	private final int[] mInputBuffers;
+	private final int[] mOutputBuffers;
+	private final int[] mBufferSizes;
+	private final int mScratchSize;
+
+	private final ThreadLocal<GraphWorkspace> mThreadWorkspace = new ThreadLocal<GraphWorkspace>() {
+
+		@Override
+		protected GraphWorkspace initialValue() {
+			return createWorkspace();
+		}
+	};
+
+	GraphPlan(final int inputsNumber, final List<Stage> stages) {
+		mInputsNumber = inputsNumber;
+		mStages = stages.toArray(new Stage[stages.size()]);
+		mInputBuffers = new int[mStages.length];
+		mOutputBuffers = new int[mStages.length];
+
+		final List<Integer> bufferSizes = new ArrayList<>();
+		int scratchSize = 0;
+		int currentBuffer = CALLER_INPUTS;
+		int currentSize = inputsNumber;
+		for (int i = 0; i < mStages.length; i++) {
+			final Stage stage = mStages[i];
+			final int outputsNumber = stage.getOutputsNumber(currentSize);
+			scratchSize = Math.max(scratchSize, stage.getScratchSize(currentSize));
+
+			mInputBuffers[i] = currentBuffer;
+			if (i == mStages.length - 1) {
+				currentBuffer = CALLER_OUTPUTS;
+			} else if (!stage.isInPlaceSafe() || currentBuffer == CALLER_INPUTS) {
+				currentBuffer = bufferSizes.size();
+				bufferSizes.add(outputsNumber);
+			}
+			mOutputBuffers[i] = currentBuffer;
+			currentSize = outputsNumber;
+		}
+
+		mOutputsNumber = currentSize;
+		mScratchSize = scratchSize;
+		mBufferSizes = new int[bufferSizes.size()];
+		for (int i = 0; i < mBufferSizes.length; i++) {
+			mBufferSizes[i] = bufferSizes.get(i);
+		}
+	}
+
+	public int getInputsNumber() {
+		return mInputsNumber;
+	}
+
+	public int getOutputsNumber() {
+		return mOutputsNumber;
+	}
+
+	/**
+	 * Stages after fusion, in execution order.
+	 */
+	public List<Stage> getStages() {
+		final List<Stage> stages = new ArrayList<>();
+		Collections.addAll(stages, mStages);
+		return Collections.unmodifiableList(stages);
+	}
+
+	public GraphWorkspace createWorkspace() {
+		return new GraphWorkspace(mBufferSizes, mScratchSize);
+	}
+
+	public double[] calculateOutputs(final double[] inputs) {
+		final double[] outputs = new double[mOutputsNumber];
+		calculateOutputs(inputs, outputs);
+		return outputs;
+	}
+
+	/**
+	 * Uses a workspace owned by the calling thread.
+	 */
+	public void calculateOutputs(final double[] inputs, final double[] outputs) {
+		calculateOutputs(inputs, mThreadWorkspace.get(), outputs);
+	}
+
+	public void calculateOutputs(final double[] inputs, final GraphWorkspace workspace, final double[] outputs) {
+		if (inputs.length != mInputsNumber) {
+			throw new IllegalArgumentException("Inputs array does not fit graph");
+		}
+		if (outputs.length != mOutputsNumber) {
+			throw new IllegalArgumentException("Outputs array does not fit graph");
+		}
+		if (!workspace.fits(mBufferSizes, mScratchSize)) {
+			throw new IllegalArgumentException("Workspace does not fit graph");
+		}
+
+		for (int i = 0; i < mStages.length; i++) {
+			mStages[i].calculate(
+					getBuffer(mInputBuffers[i], inputs, workspace, outputs),
+					getBuffer(mOutputBuffers[i], inputs, workspace, outputs),
+					workspace.mScratch
+			);
+		}
+	}
+
+	private static double[] getBuffer(final int buffer,
+									  final double[] inputs,
+									  final GraphWorkspace workspace,
+									  final double[] outputs) {
+		switch (buffer) {
+			case CALLER_INPUTS:
+				return inputs;
+
+			case CALLER_OUTPUTS:
+				return outputs;
+
+			default:
+				return workspace.mBuffers[buffer];
+		}
+	}
+}
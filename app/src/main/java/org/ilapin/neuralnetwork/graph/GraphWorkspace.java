@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+/**
+ * Intermediate buffers for one forward pass of a {@link GraphPlan}. Obtain one with
+ * {@link GraphPlan#createWorkspace()} and reuse it between calls; a workspace must not be shared between
+ * threads.
+ */
+public class GraphWorkspace {
+
+	final double[][] mBuffers;
+	final double[] mScratch;
+
+	GraphWorkspace(final int[] bufferSizes, final int scratchSize) {
+		mBuffers = new double[bufferSizes.length][];
+		for (int i = 0; i < bufferSizes.length; i++) {
+			mBuffers[i] = new double[bufferSizes[i]];
+		}
+		mScratch = new double[scratchSize];
+	}
+
+	boolean fits(final int[] bufferSizes, final int scratchSize) {
+		if (mBuffers.length != bufferSizes.length || mScratch.length < scratchSize) {
+			return false;
+		}
+
+		for (int i = 0; i < bufferSizes.length; i++) {
+			if (mBuffers[i].length != bufferSizes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
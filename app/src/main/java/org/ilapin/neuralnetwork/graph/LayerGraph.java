@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Network described as a chain of {@link Stage}s. A graph only holds the description; {@link #plan()} turns
+ * it into a {@link GraphPlan} that runs it.
+ */
+public class LayerGraph {
+
+	private final int mInputsNumber;
+	private final List<Stage> mStages;
+
+	private LayerGraph(final int inputsNumber, final List<Stage> stages) {
+		mInputsNumber = inputsNumber;
+		mStages = Collections.unmodifiableList(new ArrayList<>(stages));
+	}
+
+	public int getInputsNumber() {
+		return mInputsNumber;
+	}
+
+	public List<Stage> getStages() {
+		return mStages;
+	}
+
+	/**
+	 * Fuses adjacent stages where the result is the same function with fewer passes over memory, checks
+	 * that every stage fits its inputs and sizes all buffers:
+	 * <ul>
+	 * <li>normalization followed by a dense stage is folded into the dense weights and biases;</li>
+	 * <li>gather followed by a dense stage becomes a dense stage reading inputs through the indexes;</li>
+	 * <li>a dense stage followed by an activation applies the activation to its own outputs.</li>
+	 * </ul>
+	 * The current two layer network, gather - normalization - dense - tanh-sigmoid - dense - softmax, plans
+	 * to the same three passes {@link org.ilapin.neuralnetwork.NeuralNetwork} makes.
+	 */
+	public GraphPlan plan() {
+		final List<Stage> fusedStages = new ArrayList<>();
+		for (final Stage stage : mStages) {
+			Stage currentStage = stage;
+			while (!fusedStages.isEmpty()) {
+				final Stage fusedStage = fuse(fusedStages.get(fusedStages.size() - 1), currentStage);
+				if (fusedStage == null) {
+					break;
+				}
+				fusedStages.remove(fusedStages.size() - 1);
+				currentStage = fusedStage;
+			}
+			fusedStages.add(currentStage);
+		}
+
+		return new GraphPlan(mInputsNumber, fusedStages);
+	}
+
+	/**
+	 * @return single stage equivalent to {@code first} followed by {@code second}, or null if they are not
+	 * fused
+	 */
+	private static Stage fuse(final Stage first, final Stage second) {
+		if (!(second instanceof DenseStage || second instanceof ActivationStage)) {
+			return null;
+		}
+
+		if (second instanceof ActivationStage) {
+			if (first instanceof DenseStage && !((DenseStage) first).hasActivation()) {
+				return ((DenseStage) first).withActivation(((ActivationStage) second).getActivation());
+			}
+			return null;
+		}
+
+		final DenseStage dense = (DenseStage) second;
+		if (dense.hasInputsIndexes()) {
+			return null;
+		}
+		if (first instanceof NormalizationStage) {
+			// checks the sizes before folding, a mismatch is reported as by an unfused graph
+			first.getOutputsNumber(dense.getWeights().getColumns());
+			return dense.foldNormalization((NormalizationStage) first);
+		}
+		if (first instanceof GatherStage) {
+			final int[] indexes = ((GatherStage) first).getIndexes();
+			if (indexes.length != dense.getWeights().getColumns()) {
+				return null;
+			}
+			return dense.withInputsIndexes(indexes);
+		}
+		return null;
+	}
+
+	public static class Builder {
+
+		private final int mInputsNumber;
+		private final List<Stage> mStages = new ArrayList<>();
+
+		public Builder(final int inputsNumber) {
+			if (inputsNumber <= 0) {
+				throw new IllegalArgumentException("Inputs number is less than or equal to zero");
+			}
+
+			mInputsNumber = inputsNumber;
+		}
+
+		public Builder add(final Stage stage) {
+			mStages.add(stage);
+			return this;
+		}
+
+		public LayerGraph build() {
+			if (mStages.isEmpty()) {
+				throw new IllegalArgumentException("Graph has no stages");
+			}
+
+			return new LayerGraph(mInputsNumber, mStages);
+		}
+	}
+}
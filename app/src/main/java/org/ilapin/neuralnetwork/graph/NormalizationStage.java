@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Vector;
+
+/**
+ * Min-max normalization {@code (x - xOffset) * gain + yMin}. The planner folds it into a directly
+ * following {@link DenseStage}.
+ */
+public class NormalizationStage extends Stage {
+
+	private final double[] mXOffset;
+	private final double[] mGain;
+	private final double mYMin;
+	private final Kernels mKernels = Kernels.getDefault();
+
+	public NormalizationStage(final Vector xOffset, final Vector gain, final double yMin) {
+		if (xOffset.getLength() != gain.getLength()) {
+			throw new IllegalArgumentException("X offsets do not fit gains");
+		}
+
+		mXOffset = xOffset.toArray();
+		mGain = gain.toArray();
+		mYMin = yMin;
+	}
+
+	double[] getXOffset() {
+		return mXOffset;
+	}
+
+	double[] getGain() {
+		return mGain;
+	}
+
+	double getYMin() {
+		return mYMin;
+	}
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		if (inputsNumber != mGain.length) {
+			throw new IllegalArgumentException("Normalization does not fit inputs number " + inputsNumber);
+		}
+
+		return inputsNumber;
+	}
+
+	@Override
+	public boolean isInPlaceSafe() {
+		return true;
+	}
+
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		mKernels.minMax(inputs, 0, mGain, mXOffset, mYMin, outputs, 0, outputs.length);
+	}
+}
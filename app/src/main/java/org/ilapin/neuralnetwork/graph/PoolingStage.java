@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+/**
+ * Max or average pooling over square windows of CHW feature maps, channel by channel. Windows do not
+ * extend past the input, trailing rows and columns that do not fill a window are dropped.
+ */
+public class PoolingStage extends Stage {
+
+	public enum Type {
+		MAX, AVERAGE
+	}
+
+	private final Type mType;
+	private final int mChannels;
+	private final int mInputHeight;
+	private final int mInputWidth;
+	private final int mOutputHeight;
+	private final int mOutputWidth;
+	private final int mSize;
+	private final int mStride;
+
+	public PoolingStage(final Type type, final int channels, final int inputHeight, final int inputWidth,
+						final int size, final int stride) {
+		if (channels <= 0 || inputHeight <= 0 || inputWidth <= 0) {
+			throw new IllegalArgumentException("Input dimensions must be greater than zero");
+		}
+		if (size <= 0 || stride <= 0 || size > inputHeight || size > inputWidth) {
+			throw new IllegalArgumentException("Pooling window does not fit input");
+		}
+
+		mType = type;
+		mChannels = channels;
+		mInputHeight = inputHeight;
+		mInputWidth = inputWidth;
+		mOutputHeight = (inputHeight - size) / stride + 1;
+		mOutputWidth = (inputWidth - size) / stride + 1;
+		mSize = size;
+		mStride = stride;
+	}
+
+	public int getChannels() {
+		return mChannels;
+	}
+
+	public int getOutputHeight() {
+		return mOutputHeight;
+	}
+
+	public int getOutputWidth() {
+		return mOutputWidth;
+	}
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		if (inputsNumber != mChannels * mInputHeight * mInputWidth) {
+			throw new IllegalArgumentException("Pooling does not fit inputs number " + inputsNumber);
+		}
+
+		return mChannels * mOutputHeight * mOutputWidth;
+	}
+
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		final double windowReciprocal = 1.0 / (mSize * mSize);
+
+		int outputIndex = 0;
+		for (int c = 0; c < mChannels; c++) {
+			final int channelOffset = c * mInputHeight * mInputWidth;
+			for (int y = 0; y < mOutputHeight; y++) {
+				for (int x = 0; x < mOutputWidth; x++) {
+					final int windowOffset = channelOffset + y * mStride * mInputWidth + x * mStride;
+					double result = mType == Type.MAX ? Double.NEGATIVE_INFINITY : 0;
+					for (int i = 0; i < mSize; i++) {
+						final int row = windowOffset + i * mInputWidth;
+						for (int j = 0; j < mSize; j++) {
+							if (mType == Type.MAX) {
+								result = Math.max(result, inputs[row + j]);
+							} else {
+								result += inputs[row + j];
+							}
+						}
+					}
+					outputs[outputIndex++] = mType == Type.MAX ? result : result * windowReciprocal;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+import org.ilapin.matrix.Kernels;
+
+/**
+ * Soft max over all inputs. Not element-wise, since every output depends on every input, but
+ * {@link Kernels#softMax} never writes an output before it has read the input at the same index, so it is
+ * still safe in place.
+ */
+public class SoftMaxStage extends Stage {
+
+	private final Kernels mKernels = Kernels.getDefault();
+
+	@Override
+	public int getOutputsNumber(final int inputsNumber) {
+		return inputsNumber;
+	}
+
+	@Override
+	public boolean isInPlaceSafe() {
+		return true;
+	}
+
+	/**
+	 * Outputs sum up to 1.
+	 */
+	@Override
+	public void calculate(final double[] inputs, final double[] outputs, final double[] scratch) {
+		mKernels.softMax(inputs, 0, outputs, 0, outputs.length);
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.neuralnetwork.graph;
+
+/**
+ * One step of a {@link LayerGraph}: takes a flat vector of inputs and produces a flat vector of outputs.
+ * <p/>
+ * Stages are immutable and may be called from several threads at once; everything they write goes to
+ * {@code outputs} and {@code scratch}, which {@link GraphPlan} allocates once per workspace with the sizes
+ * reported by {@link #getOutputsNumber(int)} and {@link #getScratchSize(int)}.
+ */
+public abstract class Stage {
+
+	/**
+	 * @return outputs number for the given inputs number
+	 * @throws IllegalArgumentException if the stage cannot take that many inputs
+	 */
+	public abstract int getOutputsNumber(final int inputsNumber);
+
+	/**
+	 * True when {@link #calculate} may be given the same array as inputs and outputs, which lets the
+	 * planner run the stage in place. That holds for element-wise stages and for stages such as
+	 * {@link SoftMaxStage} that read input i before they write output i and never read it again.
+	 */
+	public boolean isInPlaceSafe() {
+		return false;
+	}
+
+	/**
+	 * Temporary doubles needed by one {@link #calculate} call.
+	 */
+	public int getScratchSize(final int inputsNumber) {
+		return 0;
+	}
+
+	/**
+	 * @param inputs exactly as many inputs as were planned
+	 * @param outputs exactly {@link #getOutputsNumber(int)} long
+	 * @param scratch at least {@link #getScratchSize(int)} long, contents undefined
+	 */
+	public abstract void calculate(final double[] inputs, final double[] outputs, final double[] scratch);
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.raster;
+
+/**
+ * Turns ARGB pixels of a rendered digit into network inputs: transparent pixels become 0, opaque ones
+ * {@code 0xff - blue}, so black ink is 0xff.
+ * <p/>
+ * Pixels are taken in the layout of {@code Bitmap.getPixels}, row by row. Both the pixels buffer and the
+ * inputs buffer are allocated once and reused by every {@link #encode()}, so an encoder must not be shared
+ * between threads.
+ */
+public class PixelEncoder {
+
+	private final int mWidth;
+	private final int mHeight;
+	private final Orientation mOrientation;
+	private final int[] mPixels;
+	private final double[] mInputs;
+
+	/**
+	 * Encoder with the {@link Orientation#COLUMN_MAJOR} layout the bundled model was trained with.
+	 */
+	public PixelEncoder(final int width, final int height) {
+		this(width, height, Orientation.COLUMN_MAJOR);
+	}
+
+	public PixelEncoder(final int width, final int height, final Orientation orientation) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+		}
+
+		mWidth = width;
+		mHeight = height;
+		mOrientation = orientation;
+		mPixels = new int[width * height];
+		mInputs = new double[width * height];
+	}
+
+	/**
+	 * Buffer to copy pixels into, e.g. with {@code bitmap.getPixels(getPixels(), 0, getWidth(), 0, 0,
+	 * getWidth(), getHeight())}.
+	 */
+	public int[] getPixels() {
+		return mPixels;
+	}
+
+	/**
+	 * Encodes the pixels buffer.
+	 *
+	 * @return inputs buffer, overwritten by the next call
+	 */
+	public double[] encode() {
+		encode(mPixels, 0, mWidth, mInputs);
+		return mInputs;
+	}
+
+	/**
+	 * Encodes a width x height region of {@code pixels} starting at {@code offset}, with {@code stride}
+	 * pixels between rows, into {@code inputs}.
+	 */
+	public void encode(final int[] pixels, final int offset, final int stride, final double[] inputs) {
+		if (inputs.length != mWidth * mHeight) {
+			throw new IllegalArgumentException("Inputs array does not fit image size");
+		}
+
+		if (mOrientation == Orientation.ROW_MAJOR) {
+			for (int y = 0; y < mHeight; y++) {
+				final int row = offset + y * stride;
+				final int inputsRow = y * mWidth;
+				for (int x = 0; x < mWidth; x++) {
+					inputs[inputsRow + x] = encodePixel(pixels[row + x]);
+				}
+			}
+		} else {
+			// column by column, so inputs are written sequentially and only the reads of the small pixel
+			// buffer are strided
+			for (int x = 0; x < mWidth; x++) {
+				final int inputsColumn = x * mHeight;
+				int pixel = offset + x;
+				for (int y = 0; y < mHeight; y++) {
+					inputs[inputsColumn + y] = encodePixel(pixels[pixel]);
+					pixel += stride;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inverse of {@link #encode(int[], int, int, double[])}, e.g. to show rasterized inputs: 0 becomes a
+	 * transparent pixel, any other input an opaque gray with {@code 0xff - input} channels.
+	 *
+	 * @return pixels buffer holding the image
+	 */
+	public int[] decode(final double[] inputs) {
+		if (inputs.length != mWidth * mHeight) {
+			throw new IllegalArgumentException("Inputs array does not fit image size");
+		}
+
+		for (int y = 0; y < mHeight; y++) {
+			for (int x = 0; x < mWidth; x++) {
+				final int index = mOrientation == Orientation.ROW_MAJOR ? y * mWidth + x : x * mHeight + y;
+				mPixels[y * mWidth + x] = decodePixel(inputs[index]);
+			}
+		}
+
+		return mPixels;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public Orientation getOrientation() {
+		return mOrientation;
+	}
+
+	static double encodePixel(final int pixel) {
+		return (pixel >>> 24) == 0 ? 0 : 0xff - (pixel & 0xff);
+	}
+
+	static int decodePixel(final double input) {
+		if (input == 0) {
+			return 0;
+		}
+
+		final int channel = 0xff - (int) Math.round(Math.max(0, Math.min(0xff, input)));
+		return 0xff000000 | channel << 16 | channel << 8 | channel;
+	}
+
+	/**
+	 * Order of pixels in the inputs.
+	 */
+	public enum Orientation {
+
+		/**
+		 * {@code inputs[x * height + y]}, columns one after another. This is how the bundled model's training
+		 * images were flattened.
+		 */
+		COLUMN_MAJOR,
+
+		/**
+		 * {@code inputs[y * width + x]}, rows one after another.
+		 */
+		ROW_MAJOR
+	}
+}
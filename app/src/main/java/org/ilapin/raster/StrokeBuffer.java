@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.raster;
+
+import java.util.Arrays;
+
+/**
+ * Touch points of a drawing, grouped in strokes, kept in primitive arrays: x, y pairs one after another and
+ * the index of the first point of every stroke.
+ * <p/>
+ * The arrays grow by doubling and are kept by {@link #clear()}, so once a buffer has held a drawing of
+ * some length, drawings up to that length don't allocate.
+ */
+public class StrokeBuffer {
+
+	private static final int INITIAL_POINTS_CAPACITY = 256;
+	private static final int INITIAL_STROKES_CAPACITY = 8;
+
+	private float[] mPoints = new float[INITIAL_POINTS_CAPACITY * 2];
+	private int mPointsNumber;
+	private int[] mStrokeStarts = new int[INITIAL_STROKES_CAPACITY];
+	private int mStrokesNumber;
+
+	/**
+	 * Starts a new stroke at the given point.
+	 */
+	public void startStroke(final float x, final float y) {
+		if (mStrokesNumber == mStrokeStarts.length) {
+			mStrokeStarts = Arrays.copyOf(mStrokeStarts, mStrokeStarts.length * 2);
+		}
+		mStrokeStarts[mStrokesNumber++] = mPointsNumber;
+		appendPoint(x, y);
+	}
+
+	/**
+	 * Continues the last stroke, starting one if there is none.
+	 */
+	public void addPoint(final float x, final float y) {
+		if (mStrokesNumber == 0) {
+			startStroke(x, y);
+		} else {
+			appendPoint(x, y);
+		}
+	}
+
+	public void clear() {
+		mPointsNumber = 0;
+		mStrokesNumber = 0;
+	}
+
+	public boolean isEmpty() {
+		return mPointsNumber == 0;
+	}
+
+	/**
+	 * Draws all strokes with {@link StrokeRasterizer#drawStroke(float[], int, int)}.
+	 */
+	public void rasterize(final StrokeRasterizer rasterizer) {
+		for (int i = 0; i < mStrokesNumber; i++) {
+			rasterizer.drawStroke(mPoints, mStrokeStarts[i] * 2, getStrokePointsNumber(i));
+		}
+	}
+
+	public int getStrokesNumber() {
+		return mStrokesNumber;
+	}
+
+	/**
+	 * @return index of the first point of the stroke
+	 */
+	public int getStrokeStart(final int stroke) {
+		return mStrokeStarts[stroke];
+	}
+
+	public int getStrokePointsNumber(final int stroke) {
+		final int end = stroke + 1 < mStrokesNumber ? mStrokeStarts[stroke + 1] : mPointsNumber;
+		return end - mStrokeStarts[stroke];
+	}
+
+	public int getPointsNumber() {
+		return mPointsNumber;
+	}
+
+	public float getX(final int point) {
+		return mPoints[point * 2];
+	}
+
+	public float getY(final int point) {
+		return mPoints[point * 2 + 1];
+	}
+
+	/**
+	 * Backing array, x of point i at 2 * i and y at 2 * i + 1. Replaced when the buffer grows.
+	 */
+	public float[] getPoints() {
+		return mPoints;
+	}
+
+	private void appendPoint(final float x, final float y) {
+		if (mPointsNumber * 2 == mPoints.length) {
+			mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+		}
+		mPoints[mPointsNumber * 2] = x;
+		mPoints[mPointsNumber * 2 + 1] = y;
+		mPointsNumber++;
+	}
+}
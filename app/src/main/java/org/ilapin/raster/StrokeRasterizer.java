@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.raster;
+
+import java.util.Arrays;
+
+/**
+ * Draws strokes of a handwritten digit straight into network inputs, without android.graphics, so the
+ * same preprocessing runs in the app and headless.
+ * <p/>
+ * The grid holds {@link #INK} where a stroke fully covers a pixel and 0 on blank pixels, laid out as
+ * given by {@link PixelEncoder.Orientation}. Stroke points are in source coordinates (e.g. view pixels)
+ * and are mapped to the grid with {@link #setScale(float, float)}.
+ * <p/>
+ * A stroke width of 0, the default, draws hairlines exactly like a non anti-aliased Skia hairline, which
+ * is how the bundled model's inputs were rendered: one pixel per step along the major axis, sampled at
+ * pixel centers, the end point left out. Wider strokes are anti-aliased, every pixel is covered by
+ * {@code width / 2 + 0.5 - d} clamped to [0, 1], d being the distance from its center to the segment, so
+ * a straight stroke puts on average {@code width} pixels of ink across its direction. Overlapping strokes
+ * keep the larger coverage.
+ */
+public class StrokeRasterizer {
+
+	/**
+	 * Input value of a fully inked pixel, the same as {@link PixelEncoder} gives black.
+	 */
+	public static final double INK = 0xff;
+
+	private final int mWidth;
+	private final int mHeight;
+	private final PixelEncoder.Orientation mOrientation;
+	private final double[] mGrid;
+
+	private float mScaleX = 1;
+	private float mScaleY = 1;
+	private float mStrokeWidth;
+
+	public StrokeRasterizer(final int width, final int height) {
+		this(width, height, PixelEncoder.Orientation.COLUMN_MAJOR);
+	}
+
+	public StrokeRasterizer(final int width, final int height, final PixelEncoder.Orientation orientation) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Grid size must be positive: " + width + "x" + height);
+		}
+
+		mWidth = width;
+		mHeight = height;
+		mOrientation = orientation;
+		mGrid = new double[width * height];
+	}
+
+	/**
+	 * Maps source coordinates to grid pixels, e.g. {@code gridWidth / viewWidth} and
+	 * {@code gridHeight / viewHeight}.
+	 */
+	public void setScale(final float scaleX, final float scaleY) {
+		mScaleX = scaleX;
+		mScaleY = scaleY;
+	}
+
+	/**
+	 * @param strokeWidth in grid pixels, 0 for hairlines
+	 */
+	public void setStrokeWidth(final float strokeWidth) {
+		if (strokeWidth < 0) {
+			throw new IllegalArgumentException("Stroke width is negative: " + strokeWidth);
+		}
+
+		mStrokeWidth = strokeWidth;
+	}
+
+	public void clear() {
+		Arrays.fill(mGrid, 0);
+	}
+
+	/**
+	 * Draws a polyline through {@code pointsNumber} points stored as x, y pairs from {@code offset}.
+	 */
+	public void drawStroke(final float[] points, final int offset, final int pointsNumber) {
+		if (pointsNumber == 1 && mStrokeWidth > 0) {
+			drawLine(points[offset], points[offset + 1], points[offset], points[offset + 1]);
+		}
+		for (int i = 1; i < pointsNumber; i++) {
+			final int start = offset + (i - 1) * 2;
+			drawLine(points[start], points[start + 1], points[start + 2], points[start + 3]);
+		}
+	}
+
+	/**
+	 * Draws one segment in source coordinates.
+	 */
+	public void drawLine(final float x0, final float y0, final float x1, final float y1) {
+		if (mStrokeWidth == 0) {
+			drawHairline(x0 * mScaleX, y0 * mScaleY, x1 * mScaleX, y1 * mScaleY);
+		} else {
+			drawWideLine(x0 * mScaleX, y0 * mScaleY, x1 * mScaleX, y1 * mScaleY);
+		}
+	}
+
+	/**
+	 * Rasterized strokes, reused by every draw until {@link #clear()}.
+	 */
+	public double[] getGrid() {
+		return mGrid;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public PixelEncoder.Orientation getOrientation() {
+		return mOrientation;
+	}
+
+	/**
+	 * Skia's SkScan::HairLineRgn, in its 26.6 and 16.16 fixed point so that pixels match bit for bit.
+	 */
+	private void drawHairline(final float fx0, final float fy0, final float fx1, final float fy1) {
+		int x0 = (int) (fx0 * 64);
+		int y0 = (int) (fy0 * 64);
+		int x1 = (int) (fx1 * 64);
+		int y1 = (int) (fy1 * 64);
+
+		if (Math.abs(x1 - x0) > Math.abs(y1 - y0)) {
+			if (x0 > x1) {
+				int t = x0;
+				x0 = x1;
+				x1 = t;
+				t = y0;
+				y0 = y1;
+				y1 = t;
+			}
+			final int ix0 = (x0 + 32) >> 6;
+			final int ix1 = (x1 + 32) >> 6;
+			if (ix0 == ix1) {
+				return;
+			}
+
+			final int slope = (int) (((long) (y1 - y0) << 16) / (x1 - x0));
+			int y = (y0 << 10) + ((slope * ((32 - x0) & 63)) >> 6);
+			for (int x = ix0; x < ix1; x++) {
+				plot(x, y >> 16, INK);
+				y += slope;
+			}
+		} else {
+			if (y0 > y1) {
+				int t = x0;
+				x0 = x1;
+				x1 = t;
+				t = y0;
+				y0 = y1;
+				y1 = t;
+			}
+			final int iy0 = (y0 + 32) >> 6;
+			final int iy1 = (y1 + 32) >> 6;
+			if (iy0 == iy1) {
+				return;
+			}
+
+			final int slope = (int) (((long) (x1 - x0) << 16) / (y1 - y0));
+			int x = (x0 << 10) + ((slope * ((32 - y0) & 63)) >> 6);
+			for (int y = iy0; y < iy1; y++) {
+				plot(x >> 16, y, INK);
+				x += slope;
+			}
+		}
+	}
+
+	private void drawWideLine(final float x0, final float y0, final float x1, final float y1) {
+		final double halfWidth = mStrokeWidth / 2.0;
+		final double reach = halfWidth + 0.5;
+		final int left = Math.max(0, (int) Math.floor(Math.min(x0, x1) - reach));
+		final int right = Math.min(mWidth - 1, (int) Math.ceil(Math.max(x0, x1) + reach));
+		final int top = Math.max(0, (int) Math.floor(Math.min(y0, y1) - reach));
+		final int bottom = Math.min(mHeight - 1, (int) Math.ceil(Math.max(y0, y1) + reach));
+
+		final double dx = x1 - x0;
+		final double dy = y1 - y0;
+		final double lengthSquared = dx * dx + dy * dy;
+
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				final double px = x + 0.5 - x0;
+				final double py = y + 0.5 - y0;
+
+				// projection of the pixel center onto the segment, clamped to its ends
+				double t = lengthSquared == 0 ? 0 : (px * dx + py * dy) / lengthSquared;
+				t = Math.max(0, Math.min(1, t));
+				final double distanceX = px - t * dx;
+				final double distanceY = py - t * dy;
+				final double coverage = reach - Math.sqrt(distanceX * distanceX + distanceY * distanceY);
+
+				if (coverage > 0) {
+					plot(x, y, Math.min(1, coverage) * INK);
+				}
+			}
+		}
+	}
+
+	private void plot(final int x, final int y, final double value) {
+		if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+			return;
+		}
+
+		final int index = mOrientation == PixelEncoder.Orientation.COLUMN_MAJOR ? x * mHeight + y : y * mWidth + x;
+		if (mGrid[index] < value) {
+			mGrid[index] = value;
+		}
+	}
+}
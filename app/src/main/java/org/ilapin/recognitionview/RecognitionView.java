@@ -22,22 +22,32 @@ import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PointF;
 import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
 
-import org.ilapin.matrix.MatrixLoader;
-import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.neuralnetwork.ModelHandle;
 import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkLoader;
+import org.ilapin.neuralnetwork.NeuralNetworkProvider;
+import org.ilapin.neuralnetwork.SpeculativeRecognition;
+import org.ilapin.raster.PixelEncoder;
+import org.ilapin.raster.StrokeBuffer;
+import org.ilapin.raster.StrokeRasterizer;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class RecognitionView extends View {
 
@@ -46,16 +56,66 @@ public class RecognitionView extends View {
 	private final static int RECOGNIZED_IMAGE_ROWS = 28;
 	private final static int RECOGNIZED_IMAGE_COLUMNS = 28;
 
-	private static NeuralNetwork sNeuralNetwork;
+	// shared by all views, touched on the main thread only
+	private static ModelHandle sModelHandle;
+
+	// one background priority thread for speculative recognition of all views
+	private static final ExecutorService sSpeculationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "Speculative recognition");
+		}
+	});
 
 	private State mState = State.IDLE;
 
 	private Listener mListener;
 
+	// appended to with every touch point, so redrawing doesn't walk the stored points
 	private final Path mPath = new Path();
+	private final Path mTransformedPath = new Path();
 	private Paint mPaint = new Paint();
 
-	private final List<List<PointF>> mSegments = new ArrayList<>();
+	private final StrokeBuffer mStrokes = new StrokeBuffer();
+
+	// network inputs, updated with every drawn segment; rebuilt from mStrokes only when the size changed
+	private final StrokeRasterizer mRasterizer = new StrokeRasterizer(RECOGNIZED_IMAGE_COLUMNS, RECOGNIZED_IMAGE_ROWS);
+	private boolean mRasterStale;
+
+	// bumped on every change of the drawing
+	private int mDrawingRevision;
+
+	private boolean mStreamingRecognition;
+	private final SpeculativeRecognition mSpeculativeRecognition;
+	private final SpeculativeRecognition.Listener mSpeculativeRecognitionListener =
+			new SpeculativeRecognition.Listener() {
+
+				@Override
+				public void onRecognized(final double[] inputs, final double[] outputs) {
+					if (mListener != null) {
+						mListener.onDebugBitmap(Bitmap.createBitmap(mPixelEncoder.decode(inputs),
+								RECOGNIZED_IMAGE_COLUMNS, RECOGNIZED_IMAGE_ROWS, Bitmap.Config.ARGB_8888));
+					}
+					onRecognitionFinished(formatOutputs(outputs));
+				}
+
+				@Override
+				public void onRecognitionUnavailable() {
+					startRecognitionTask();
+				}
+			};
+
+	// reused by RecognitionTask, only one task runs at a time
+	private final PixelEncoder mPixelEncoder = new PixelEncoder(RECOGNIZED_IMAGE_COLUMNS, RECOGNIZED_IMAGE_ROWS);
+	private double[] mOutputs;
 
 	private final Runnable mEndOfDrawingRoutine = new Runnable() {
 
@@ -64,26 +124,26 @@ public class RecognitionView extends View {
 			changeState(State.RECOGNIZING);
 			invalidate();
 
-			new RecognitionTask().execute();
+			if (!mSpeculativeRecognition.finish(mDrawingRevision, mSpeculativeRecognitionListener)) {
+				mSpeculativeRecognition.cancel();
+				startRecognitionTask();
+			}
 		}
 	};
 
-	private Bitmap buildBitmapForRecognition() {
-		final Paint paint = new Paint();
-		paint.setColor(0xff000000);
-		paint.setStrokeWidth(0);
-		paint.setStyle(Paint.Style.STROKE);
-		final Bitmap bitmap = Bitmap.createBitmap(RECOGNIZED_IMAGE_COLUMNS, RECOGNIZED_IMAGE_ROWS,
-				Bitmap.Config.ARGB_8888);
-		final Canvas canvas = new Canvas(bitmap);
-
-		final Matrix matrix = new Matrix();
-		matrix.reset();
-		matrix.setScale((float) RECOGNIZED_IMAGE_COLUMNS / getWidth(), (float) RECOGNIZED_IMAGE_ROWS / getHeight());
+	/**
+	 * @return network inputs for the drawn segments
+	 */
+	private double[] rasterize() {
+		if (!mRasterStale) {
+			return mRasterizer.getGrid();
+		}
 
-		drawPath(canvas, paint, matrix);
+		mRasterizer.clear();
+		mStrokes.rasterize(mRasterizer);
+		mRasterStale = false;
 
-		return bitmap;
+		return mRasterizer.getGrid();
 	}
 
 	public RecognitionView(final Context context) {
@@ -97,10 +157,21 @@ public class RecognitionView extends View {
 	public RecognitionView(final Context context, final AttributeSet attrs, final int defStyleAttr) {
 		super(context, attrs, defStyleAttr);
 
+		mSpeculativeRecognition = new SpeculativeRecognition(sSpeculationExecutor, new Executor() {
+
+			@Override
+			public void execute(final Runnable command) {
+				mHandler.post(command);
+			}
+		});
 		init();
 	}
 
 	private void init() {
+		if (!isInEditMode()) {
+			heavyInit();
+		}
+
 		mPaint.setColor(0xff000000);
 		mPaint.setAntiAlias(true);
 		mPaint.setStyle(Paint.Style.STROKE);
@@ -117,38 +188,49 @@ public class RecognitionView extends View {
 		mListener = listener;
 	}
 
-	public void heavyInit() {
-		final AssetManager assetManager = getContext().getAssets();
-		final double[][] inputLayerWeights, layerWeights, inputBiases, layerBiases, gain, keep, xOffset;
-		try {
-			inputLayerWeights = MatrixLoader.load(assetManager.open("input_layer_weights"));
-			layerWeights = MatrixLoader.load(assetManager.open("layer_weights"));
-			inputBiases = MatrixLoader.load(assetManager.open("input_biases"));
-			layerBiases = MatrixLoader.load(assetManager.open("layer_biases"));
-			gain = MatrixLoader.load(assetManager.open("gain"));
-			keep = MatrixLoader.load(assetManager.open("keep"));
-			xOffset = MatrixLoader.load(assetManager.open("xoffset"));
-		} catch (final IOException e) {
-			throw new RuntimeException(e);
+	/**
+	 * In streaming mode every finished stroke is recognized right away, at low priority, and the result is
+	 * used if nothing else is drawn before the drawing timeout. Off by default.
+	 */
+	public void setStreamingRecognition(final boolean streamingRecognition) {
+		mStreamingRecognition = streamingRecognition;
+		if (!streamingRecognition) {
+			// a recognition waiting for the speculation falls back to the regular task
+			mSpeculativeRecognition.cancel();
 		}
-		final double[] keepInputsIndexesDoubleArray = MatrixUtils.matrixToVectorArray(keep);
-		final int[] keepInputsIndexes = new int[keepInputsIndexesDoubleArray.length];
-		for (int i = 0; i < keepInputsIndexes.length; i++) {
-			keepInputsIndexes[i] = (int) keepInputsIndexesDoubleArray[i];
+	}
+
+	/**
+	 * Starts loading the neural network in the background, does nothing if it is already loading or loaded.
+	 */
+	public void heavyInit() {
+		if (sModelHandle == null) {
+			final AssetManager assetManager = getContext().getApplicationContext().getAssets();
+			final NeuralNetworkProvider provider = NeuralNetworkProvider.fromSource(new NeuralNetworkLoader.Source() {
+
+				@Override
+				public InputStream open(final String name) throws IOException {
+					return assetManager.open(name);
+				}
+			}, AsyncTask.THREAD_POOL_EXECUTOR);
+			provider.start();
+			sModelHandle = new ModelHandle(provider);
 		}
-		sNeuralNetwork = new NeuralNetwork(
-				keep[0].length,
-				inputLayerWeights.length,
-				layerWeights.length,
-				keepInputsIndexes
-		);
-		sNeuralNetwork.setInputsWeights(inputLayerWeights);
-		sNeuralNetwork.setInputBiases(inputBiases);
-		sNeuralNetwork.setLayerWeights(layerWeights);
-		sNeuralNetwork.setLayerBiases(layerBiases);
-		sNeuralNetwork.setXOffset(xOffset);
-		sNeuralNetwork.setGain(gain);
-		sNeuralNetwork.setYMin(-1);
+	}
+
+	/**
+	 * Loads new network parameters in the background and swaps them in once loaded. Recognition keeps
+	 * running on the previous version until then, a recognition in progress finishes on it.
+	 */
+	public Future<NeuralNetwork> updateNeuralNetwork(final NeuralNetworkLoader.Source source) {
+		heavyInit();
+		return sModelHandle.swapAsync(new Callable<NeuralNetwork>() {
+
+			@Override
+			public NeuralNetwork call() throws Exception {
+				return NeuralNetworkLoader.load(source);
+			}
+		}, AsyncTask.THREAD_POOL_EXECUTOR);
 	}
 
 	@Override
@@ -167,6 +249,15 @@ public class RecognitionView extends View {
 		}
 	}
 
+	@Override
+	protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+
+		mRasterizer.setScale((float) RECOGNIZED_IMAGE_COLUMNS / w, (float) RECOGNIZED_IMAGE_ROWS / h);
+		// segments drawn so far are in the old scale, they are rasterized again when recognition needs them
+		mRasterStale = !mStrokes.isEmpty();
+	}
+
 	@Override
 	protected void onDraw(final Canvas canvas) {
 		switch (mState) {
@@ -193,26 +284,12 @@ public class RecognitionView extends View {
 	}
 
 	protected void drawPath(final Canvas canvas, final Paint paint) {
-		drawPath(canvas, paint, new Matrix());
+		canvas.drawPath(mPath, paint);
 	}
 
 	protected void drawPath(final Canvas canvas, final Paint paint, final Matrix matrix) {
-		mPath.reset();
-
-		for (final List<PointF> segmentPoints : mSegments) {
-			for (int i = 0; i < segmentPoints.size(); i++) {
-				final PointF point = segmentPoints.get(i);
-				if (i > 0) {
-					mPath.lineTo(point.x, point.y);
-				} else {
-					mPath.moveTo(point.x, point.y);
-				}
-			}
-		}
-
-		mPath.transform(matrix);
-
-		canvas.drawPath(mPath, paint);
+		mPath.transform(matrix, mTransformedPath);
+		canvas.drawPath(mTransformedPath, paint);
 	}
 
 	private void processDrawingEvent(final MotionEvent event) {
@@ -220,21 +297,23 @@ public class RecognitionView extends View {
 		switch (action) {
 			case MotionEvent.ACTION_DOWN:
 				continueDrawing();
-				createAndSaveSegment(event);
+				startStroke(event.getX(), event.getY());
 				break;
 
 			case MotionEvent.ACTION_MOVE:
 				continueDrawing();
-				if (!mSegments.isEmpty()) {
-					final List<PointF> currentSegment = mSegments.get(mSegments.size() - 1);
-					currentSegment.add(new PointF(event.getX(), event.getY()));
+				if (!mStrokes.isEmpty()) {
+					continueStroke(event.getX(), event.getY());
 				} else {
-					createAndSaveSegment(event);
+					startStroke(event.getX(), event.getY());
 				}
 				break;
 
 			case MotionEvent.ACTION_CANCEL:
 			case MotionEvent.ACTION_UP:
+				if (mStreamingRecognition) {
+					startSpeculation();
+				}
 				awaitForEndOfDrawing();
 		}
 		invalidate();
@@ -242,27 +321,110 @@ public class RecognitionView extends View {
 
 	private void continueDrawing() {
 		removeCallbacks(mEndOfDrawingRoutine);
+		mSpeculativeRecognition.cancel();
+	}
+
+	private void startSpeculation() {
+		heavyInit();
+		// the grid keeps changing with the next stroke, the speculation works on a snapshot
+		mSpeculativeRecognition.start(sModelHandle, mDrawingRevision, rasterize().clone());
+	}
+
+	private void startRecognitionTask() {
+		heavyInit();
+		new RecognitionTask(sModelHandle, rasterize()).execute();
+	}
+
+	private void onRecognitionFinished(final String result) {
+		mSpeculativeRecognition.cancel();
+		changeState(State.IDLE);
+		mStrokes.clear();
+		mPath.reset();
+		mRasterizer.clear();
+		mRasterStale = false;
+		mDrawingRevision++;
+		if (mListener != null) {
+			mListener.onRecognitionResult(result);
+		}
+		invalidate();
+	}
+
+	/**
+	 * @param outputs reused if they fit the network, may be null
+	 * @return outputs of the network
+	 */
+	private static double[] calculateOutputs(final ModelHandle modelHandle,
+											 final double[] inputs,
+											 final double[] outputs) {
+		final ModelHandle.Lease lease = modelHandle.acquire();
+		try {
+			final NeuralNetwork neuralNetwork = lease.getNeuralNetwork();
+			final double[] fittingOutputs = outputs != null && outputs.length == neuralNetwork.getOutputsNumber() ?
+					outputs :
+					new double[neuralNetwork.getOutputsNumber()];
+			neuralNetwork.calculateOutputs(inputs, fittingOutputs);
+			return fittingOutputs;
+		} finally {
+			lease.close();
+		}
+	}
+
+	private static String formatOutputs(final double[] outputs) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < outputs.length; i++) {
+			if (i > 0) {
+				sb.append("|");
+			}
+			sb.append(String.format("%d: %f", i, outputs[i]));
+		}
+
+		return sb.toString();
 	}
 
 	private void awaitForEndOfDrawing() {
 		postDelayed(mEndOfDrawingRoutine, END_DRAWING_TIMEOUT);
 	}
 
-	private void createAndSaveSegment(final MotionEvent event) {
-		final ArrayList<PointF> segment = new ArrayList<>();
-		segment.add(new PointF(event.getX(), event.getY()));
-		mSegments.add(segment);
+	private void startStroke(final float x, final float y) {
+		mDrawingRevision++;
+		mStrokes.startStroke(x, y);
+		if (!mRasterStale) {
+			// a lone point is inked only by wide strokes, the same way a full rasterization draws it
+			mRasterizer.drawStroke(mStrokes.getPoints(), (mStrokes.getPointsNumber() - 1) * 2, 1);
+		}
+		mPath.moveTo(x, y);
+	}
+
+	private void continueStroke(final float x, final float y) {
+		mDrawingRevision++;
+		final int lastPoint = mStrokes.getPointsNumber() - 1;
+		if (!mRasterStale) {
+			mRasterizer.drawLine(mStrokes.getX(lastPoint), mStrokes.getY(lastPoint), x, y);
+		}
+		mStrokes.addPoint(x, y);
+		mPath.lineTo(x, y);
 	}
 
 	private final Handler mHandler = new Handler(Looper.getMainLooper());
 	private class RecognitionTask extends AsyncTask<Void, Void, String> {
 
+		private final ModelHandle mModelHandle;
+
+		private final double[] mInputs;
+
+		RecognitionTask(final ModelHandle modelHandle, final double[] inputs) {
+			mModelHandle = modelHandle;
+			mInputs = inputs;
+		}
+
 		@Override
 		@SuppressWarnings("ResourceType")
 		protected String doInBackground(final Void... params) {
-			final Bitmap bitmap = buildBitmapForRecognition();
+			final double[] inputs = mInputs;
 
 			if (mListener != null) {
+				final Bitmap bitmap = Bitmap.createBitmap(mPixelEncoder.decode(inputs),
+						RECOGNIZED_IMAGE_COLUMNS, RECOGNIZED_IMAGE_ROWS, Bitmap.Config.ARGB_8888);
 				mHandler.post(new Runnable() {
 
 					@Override
@@ -272,39 +434,13 @@ public class RecognitionView extends View {
 				});
 			}
 
-			if (sNeuralNetwork == null) {
-				heavyInit();
-			}
-
-			final double[] inputs = new double[RECOGNIZED_IMAGE_ROWS * RECOGNIZED_IMAGE_COLUMNS];
-			for (int i = 0; i < RECOGNIZED_IMAGE_ROWS; i++) {
-				for (int j = 0; j < RECOGNIZED_IMAGE_COLUMNS; j++) {
-					final int pixelColor = bitmap.getPixel(i, j);
-					inputs[i * RECOGNIZED_IMAGE_COLUMNS + j] = ((pixelColor & 0xff000000) >>> 24) == 0 ? 0 : 0xff - (pixelColor & 0xff);
-				}
-			}
-
-			final double[] outputs = sNeuralNetwork.calculateOutputs(inputs);
-
-			final StringBuilder sb = new StringBuilder();
-			for (int i = 0; i < outputs.length; i++) {
-				if (i > 0) {
-					sb.append("|");
-				}
-				sb.append(String.format("%d: %f", i, outputs[i]));
-			}
-
-			return sb.toString();
+			mOutputs = calculateOutputs(mModelHandle, inputs, mOutputs);
+			return formatOutputs(mOutputs);
 		}
 
 		@Override
 		protected void onPostExecute(final String result) {
-			changeState(State.IDLE);
-			mSegments.clear();
-			if (mListener != null) {
-				mListener.onRecognitionResult(result);
-			}
-			invalidate();
+			onRecognitionFinished(result);
 		}
 	}
 
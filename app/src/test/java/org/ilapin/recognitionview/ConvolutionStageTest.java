@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.Vector;
+import org.ilapin.neuralnetwork.graph.Activation;
+import org.ilapin.neuralnetwork.graph.ActivationStage;
+import org.ilapin.neuralnetwork.graph.ConvolutionStage;
+import org.ilapin.neuralnetwork.graph.DenseStage;
+import org.ilapin.neuralnetwork.graph.GraphPlan;
+import org.ilapin.neuralnetwork.graph.LayerGraph;
+import org.ilapin.neuralnetwork.graph.PoolingStage;
+import org.ilapin.neuralnetwork.graph.SoftMaxStage;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ConvolutionStageTest {
+	@Test
+	public void testConvolution() {
+		final Random random = new Random(8);
+		// channels, height, width, output channels, kernel size, stride, padding
+		final int[][] shapes = {
+				{1, 28, 28, 8, 3, 1, 1},
+				{3, 7, 6, 4, 3, 1, 0},
+				{2, 5, 9, 3, 3, 1, 1},
+				{2, 11, 10, 3, 5, 2, 2},
+		};
+
+		for (final int[] shape : shapes) {
+			final int channels = shape[0], height = shape[1], width = shape[2], outputChannels = shape[3];
+			final int kernelSize = shape[4], stride = shape[5], padding = shape[6];
+			final Matrix weights = randomMatrix(random, outputChannels, channels * kernelSize * kernelSize);
+			final Vector biases = new Vector(randomMatrix(random, 1, outputChannels).row(0).toArray());
+			final double[] inputs = randomMatrix(random, 1, channels * height * width).row(0).toArray();
+
+			final double[] expectedResult = convolve(inputs, channels, height, width, weights, biases,
+					kernelSize, stride, padding);
+
+			final ConvolutionStage.Algorithm[] algorithms = kernelSize == 3 ?
+					ConvolutionStage.Algorithm.values() : new ConvolutionStage.Algorithm[] {ConvolutionStage.Algorithm.IM2COL};
+			for (final ConvolutionStage.Algorithm algorithm : algorithms) {
+				final ConvolutionStage stage = new ConvolutionStage(channels, height, width, weights, biases,
+						kernelSize, stride, padding, algorithm);
+				final double[] actualResult = new double[stage.getOutputsNumber(inputs.length)];
+				Assert.assertEquals(expectedResult.length, actualResult.length);
+				stage.calculate(inputs, actualResult, new double[stage.getScratchSize(inputs.length)]);
+
+				for (int i = 0; i < expectedResult.length; i++) {
+					Assert.assertEquals(algorithm.toString(), expectedResult[i], actualResult[i], 1e-10);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPooling() {
+		final double[] inputs = {
+				1, 2, 5, 3, 0,
+				4, 0, 1, 1, 7,
+				-1, -2, 8, 9, 7,
+				-3, -4, 6, 7, 7,
+		};
+
+		final PoolingStage maxPooling = new PoolingStage(PoolingStage.Type.MAX, 1, 4, 5, 2, 2);
+		final double[] maxResult = new double[maxPooling.getOutputsNumber(inputs.length)];
+		maxPooling.calculate(inputs, maxResult, null);
+		Assert.assertEquals(4, maxResult.length);
+		Assert.assertEquals(4, maxResult[0], 0);
+		Assert.assertEquals(5, maxResult[1], 0);
+		Assert.assertEquals(-1, maxResult[2], 0);
+		Assert.assertEquals(9, maxResult[3], 0);
+
+		final PoolingStage averagePooling = new PoolingStage(PoolingStage.Type.AVERAGE, 1, 4, 5, 2, 2);
+		final double[] averageResult = new double[averagePooling.getOutputsNumber(inputs.length)];
+		averagePooling.calculate(inputs, averageResult, null);
+		Assert.assertEquals(1.75, averageResult[0], 1e-15);
+		Assert.assertEquals(2.5, averageResult[1], 1e-15);
+		Assert.assertEquals(-2.5, averageResult[2], 1e-15);
+		Assert.assertEquals(7.5, averageResult[3], 1e-15);
+	}
+
+	@Test
+	public void testSmallNetwork() {
+		final Random random = new Random(9);
+		final ConvolutionStage convolution1 = new ConvolutionStage(1, 28, 28,
+				randomMatrix(random, 8, 9), new Vector(8), 3, 1, 1);
+		final PoolingStage pooling1 = new PoolingStage(PoolingStage.Type.MAX,
+				convolution1.getOutputChannels(), convolution1.getOutputHeight(), convolution1.getOutputWidth(), 2, 2);
+		final ConvolutionStage convolution2 = new ConvolutionStage(pooling1.getChannels(),
+				pooling1.getOutputHeight(), pooling1.getOutputWidth(), randomMatrix(random, 8, 72), new Vector(8), 3, 1, 1);
+		final PoolingStage pooling2 = new PoolingStage(PoolingStage.Type.MAX,
+				convolution2.getOutputChannels(), convolution2.getOutputHeight(), convolution2.getOutputWidth(), 2, 2);
+
+		final GraphPlan plan = new LayerGraph.Builder(TestNetworks.IMAGE_SIZE)
+				.add(convolution1)
+				.add(new ActivationStage(Activation.RELU))
+				.add(pooling1)
+				.add(convolution2)
+				.add(new ActivationStage(Activation.RELU))
+				.add(pooling2)
+				.add(new DenseStage(randomMatrix(random, 10, 8 * 7 * 7), new Vector(10)))
+				.add(new SoftMaxStage())
+				.build()
+				.plan();
+		Assert.assertEquals(ConvolutionStage.Algorithm.WINOGRAD, convolution1.getAlgorithm());
+		Assert.assertEquals(10, plan.getOutputsNumber());
+
+		final double[] outputs = plan.calculateOutputs(TestNetworks.randomInputs(random));
+		double sum = 0;
+		for (final double output : outputs) {
+			sum += output;
+		}
+		Assert.assertEquals(1, sum, 1e-12);
+	}
+
+	private static double[] convolve(final double[] inputs, final int channels, final int height, final int width,
+									 final Matrix weights, final Vector biases,
+									 final int kernelSize, final int stride, final int padding) {
+		final int outputHeight = (height + 2 * padding - kernelSize) / stride + 1;
+		final int outputWidth = (width + 2 * padding - kernelSize) / stride + 1;
+		final double[] outputs = new double[weights.getRows() * outputHeight * outputWidth];
+
+		for (int k = 0; k < weights.getRows(); k++) {
+			for (int y = 0; y < outputHeight; y++) {
+				for (int x = 0; x < outputWidth; x++) {
+					double sum = biases.get(k);
+					for (int c = 0; c < channels; c++) {
+						for (int ky = 0; ky < kernelSize; ky++) {
+							for (int kx = 0; kx < kernelSize; kx++) {
+								final int inputY = y * stride + ky - padding;
+								final int inputX = x * stride + kx - padding;
+								if (inputY >= 0 && inputY < height && inputX >= 0 && inputX < width) {
+									sum += weights.get(k, (c * kernelSize + ky) * kernelSize + kx) *
+											inputs[(c * height + inputY) * width + inputX];
+								}
+							}
+						}
+					}
+					outputs[(k * outputHeight + y) * outputWidth + x] = sum;
+				}
+			}
+		}
+
+		return outputs;
+	}
+
+	private static Matrix randomMatrix(final Random random, final int rows, final int columns) {
+		final Matrix matrix = new Matrix(rows, columns);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				matrix.set(i, j, random.nextGaussian());
+			}
+		}
+		return matrix;
+	}
+}
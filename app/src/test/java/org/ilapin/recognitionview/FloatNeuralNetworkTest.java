@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.matrix.FloatMatrix;
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixLoader;
+import org.ilapin.neuralnetwork.FloatNeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.OutputsComparison;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class FloatNeuralNetworkTest {
+
+	private static final double TOLERANCE = 0.0001;
+
+	@Test
+	public void testParityWithDoublePrecision() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final FloatNeuralNetwork converted = new FloatNeuralNetwork(neuralNetwork);
+		final FloatNeuralNetwork loaded = loadFloatNetwork();
+
+		final Random random = new Random(6);
+		for (int n = 0; n < 50; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			final float[] floatInputs = new float[inputs.length];
+			for (int i = 0; i < inputs.length; i++) {
+				floatInputs[i] = (float) inputs[i];
+			}
+
+			final double[] expectedResult = neuralNetwork.calculateOutputs(inputs);
+			final float[] convertedResult = converted.calculateOutputs(floatInputs);
+			final float[] loadedResult = loaded.calculateOutputs(floatInputs);
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], convertedResult[i], TOLERANCE);
+				Assert.assertEquals(expectedResult[i], loadedResult[i], TOLERANCE);
+			}
+		}
+	}
+
+	/**
+	 * Agreement with the trained model. Skipped when input_layer_weights is not checked in, the parity
+	 * test above then runs on random fixture weights only.
+	 */
+	@Test
+	public void testShippedModelDecisions() throws Exception {
+		Assume.assumeTrue(TestNetworks.hasInputLayerWeights());
+
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final FloatNeuralNetwork floatNeuralNetwork = new FloatNeuralNetwork(neuralNetwork);
+		final Random random = new Random(7);
+
+		final OutputsComparison comparison = new OutputsComparison();
+		for (int n = 0; n < 200; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			final float[] floatInputs = new float[inputs.length];
+			for (int i = 0; i < inputs.length; i++) {
+				floatInputs[i] = (float) inputs[i];
+			}
+
+			final float[] floatResult = floatNeuralNetwork.calculateOutputs(floatInputs);
+			final double[] result = new double[floatResult.length];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = floatResult[i];
+			}
+			comparison.add(neuralNetwork.calculateOutputs(inputs), result);
+		}
+
+		Assert.assertTrue(comparison.toString(), comparison.getDecisionAgreement() >= 0.99);
+	}
+
+	@Test
+	public void testSoftMaxOfNegativeInputs() {
+		final float[] outputs = new float[2];
+		Kernels.getDefault().softMax(new float[] {-1000, -1001}, 0, outputs, 0, 2);
+
+		Assert.assertEquals(1 / (1 + Math.exp(-1)), outputs[0], TOLERANCE);
+		Assert.assertEquals(1 - 1 / (1 + Math.exp(-1)), outputs[1], TOLERANCE);
+	}
+
+	@Test
+	public void testParametersMustBeColumnVectors() {
+		final int[] keepInputsIndexes = {0, 1, 2};
+		Assert.assertNotNull(new FloatNeuralNetwork(
+				new FloatMatrix(2, 3), new FloatMatrix(2, 1), new FloatMatrix(4, 2), new FloatMatrix(4, 1),
+				new FloatMatrix(3, 1), new FloatMatrix(3, 1), -1, keepInputsIndexes
+		));
+
+		final FloatMatrix[][] parameters = {
+				// gain with a second column
+				{new FloatMatrix(2, 1), new FloatMatrix(4, 1), new FloatMatrix(3, 1), new FloatMatrix(3, 2)},
+				// x offset with a second column
+				{new FloatMatrix(2, 1), new FloatMatrix(4, 1), new FloatMatrix(3, 2), new FloatMatrix(3, 1)},
+				// input biases with a second column
+				{new FloatMatrix(2, 2), new FloatMatrix(4, 1), new FloatMatrix(3, 1), new FloatMatrix(3, 1)},
+				// layer biases with a second column
+				{new FloatMatrix(2, 1), new FloatMatrix(4, 2), new FloatMatrix(3, 1), new FloatMatrix(3, 1)},
+		};
+		for (int n = 0; n < parameters.length; n++) {
+			try {
+				new FloatNeuralNetwork(
+						new FloatMatrix(2, 3), parameters[n][0], new FloatMatrix(4, 2), parameters[n][1],
+						parameters[n][2], parameters[n][3], -1, keepInputsIndexes
+				);
+				Assert.fail("Case " + n + " is accepted");
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	private static FloatNeuralNetwork loadFloatNetwork() throws IOException {
+		final FloatMatrix inputBiases = loadFloatAsset("input_biases");
+		final Matrix keep = TestNetworks.loadAsset("keep");
+		final FloatMatrix inputLayerWeights = FloatMatrix.fromMatrix(
+				TestNetworks.loadInputLayerWeights(inputBiases.getRows(), keep.getColumns())
+		);
+
+		final int[] keepInputsIndexes = new int[keep.getColumns()];
+		for (int i = 0; i < keepInputsIndexes.length; i++) {
+			keepInputsIndexes[i] = (int) keep.get(0, i);
+		}
+
+		return new FloatNeuralNetwork(
+				inputLayerWeights,
+				inputBiases,
+				loadFloatAsset("layer_weights"),
+				loadFloatAsset("layer_biases"),
+				loadFloatAsset("xoffset"),
+				loadFloatAsset("gain"),
+				-1,
+				keepInputsIndexes
+		);
+	}
+
+	private static FloatMatrix loadFloatAsset(final String name) throws IOException {
+		final FileInputStream inputStream = new FileInputStream(new File("src/main/assets", name));
+		try {
+			return MatrixLoader.loadFloatMatrix(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+}
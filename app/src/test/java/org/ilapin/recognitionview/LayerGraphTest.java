@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.Vector;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.graph.Activation;
+import org.ilapin.neuralnetwork.graph.ActivationStage;
+import org.ilapin.neuralnetwork.graph.DenseStage;
+import org.ilapin.neuralnetwork.graph.GatherStage;
+import org.ilapin.neuralnetwork.graph.GraphPlan;
+import org.ilapin.neuralnetwork.graph.LayerGraph;
+import org.ilapin.neuralnetwork.graph.NormalizationStage;
+import org.ilapin.neuralnetwork.graph.SoftMaxStage;
+import org.ilapin.neuralnetwork.graph.Stage;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LayerGraphTest {
+	@Test
+	public void testCurrentNetwork() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final GraphPlan plan = TestNetworks.loadGraph().plan();
+		Assert.assertEquals(3, plan.getStages().size());
+		Assert.assertEquals(neuralNetwork.getOutputsNumber(), plan.getOutputsNumber());
+
+		final Random random = new Random(5);
+		final double[] actualResult = new double[plan.getOutputsNumber()];
+		for (int n = 0; n < 10; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			final double[] expectedResult = neuralNetwork.calculateOutputs(inputs);
+			plan.calculateOutputs(inputs, actualResult);
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult[i], 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testDeepGraph() {
+		final Random random = new Random(6);
+		final int inputsNumber = 50;
+		final int[] indexes = new int[30];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = random.nextInt(inputsNumber);
+		}
+
+		final LayerGraph graph = new LayerGraph.Builder(inputsNumber)
+				.add(new ActivationStage(Activation.RELU))
+				.add(new GatherStage(indexes))
+				.add(new NormalizationStage(randomVector(random, 30), randomVector(random, 30), -1))
+				.add(new DenseStage(randomMatrix(random, 40, 30), randomVector(random, 40)))
+				.add(new ActivationStage(Activation.RELU))
+				.add(new DenseStage(randomMatrix(random, 20, 40), randomVector(random, 20)))
+				.add(new ActivationStage(Activation.TANH_SIGMOID))
+				.add(new NormalizationStage(randomVector(random, 20), randomVector(random, 20), 0))
+				.add(new DenseStage(randomMatrix(random, 10, 20), randomVector(random, 10)))
+				.add(new SoftMaxStage())
+				.build();
+		final GraphPlan plan = graph.plan();
+		Assert.assertEquals(5, plan.getStages().size());
+
+		for (int n = 0; n < 10; n++) {
+			final double[] inputs = randomVector(random, inputsNumber).toArray();
+			final double[] inputsCopy = inputs.clone();
+
+			// every stage on its own, as the graph describes it
+			double[] expectedResult = inputs.clone();
+			int size = inputsNumber;
+			for (final Stage stage : graph.getStages()) {
+				size = stage.getOutputsNumber(size);
+				final double[] outputs = new double[size];
+				stage.calculate(expectedResult, outputs, null);
+				expectedResult = outputs;
+			}
+
+			final double[] actualResult = plan.calculateOutputs(inputs);
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult[i], 1e-12);
+			}
+			for (int i = 0; i < inputs.length; i++) {
+				Assert.assertEquals(inputsCopy[i], inputs[i], 0);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShapeMismatch() {
+		final Random random = new Random(7);
+		new LayerGraph.Builder(10)
+				.add(new DenseStage(randomMatrix(random, 5, 10), randomVector(random, 5)))
+				.add(new DenseStage(randomMatrix(random, 3, 4), randomVector(random, 3)))
+				.build()
+				.plan();
+	}
+
+	private static Matrix randomMatrix(final Random random, final int rows, final int columns) {
+		final Matrix matrix = new Matrix(rows, columns);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				matrix.set(i, j, random.nextGaussian());
+			}
+		}
+		return matrix;
+	}
+
+	private static Vector randomVector(final Random random, final int length) {
+		final Vector vector = new Vector(length);
+		for (int i = 0; i < length; i++) {
+			vector.set(i, random.nextGaussian());
+		}
+		return vector;
+	}
+}
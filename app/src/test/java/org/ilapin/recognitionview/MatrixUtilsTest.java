@@ -17,9 +17,23 @@ package org.ilapin.recognitionview;
 
 import junit.framework.Assert;
 
+import org.ilapin.matrix.Kernels;
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixLoader;
 import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.matrix.ParallelExecution;
+import org.ilapin.matrix.SparseMatrix;
+import org.ilapin.matrix.Vector;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class MatrixUtilsTest {
 	@Test
 	public void testSum() {
@@ -142,4 +156,350 @@ public class MatrixUtilsTest {
 			Assert.assertEquals(expectedResult[i], actualResult1[i], 0.00001);
 		}
 	}
+
+	@Test
+	public void testFlatMatrixMultiply() {
+		final Matrix a = Matrix.fromArray(new double[][]{
+				{1, 2, 3, 4},
+				{5, 6, 7, 8},
+				{9, 10, 11, 12},
+		});
+		final Matrix b = Matrix.fromArray(new double[][]{
+				{10, 20, 30},
+				{40, 50, 60},
+				{70, 80, 90},
+				{100, 110, 120},
+		});
+		final double[][] expectedResult = {
+				{700, 800, 900},
+				{1580, 1840, 2100},
+				{2460, 2880, 3300},
+		};
+		final Matrix actualResult = MatrixUtils.matrixMultiply(a, b);
+		Assert.assertEquals(expectedResult.length, actualResult.getRows());
+		Assert.assertEquals(expectedResult[0].length, actualResult.getColumns());
+		for (int i = 0; i < expectedResult.length; i++) {
+			for (int j = 0; j < expectedResult[0].length; j++) {
+				Assert.assertEquals(expectedResult[i][j], actualResult.get(i, j), 0.00001);
+			}
+		}
+	}
+
+	@Test
+	public void testFlatMatrixViews() {
+		final Matrix a = Matrix.fromArray(new double[][]{
+				{1, 2, 3, 4},
+				{5, 6, 7, 8},
+				{9, 10, 11, 12},
+		});
+		final Matrix b = Matrix.fromArray(new double[][]{
+				{10, 20},
+				{30, 40},
+		});
+		final double[][] expectedResult = {
+				{16, 27},
+				{40, 51},
+		};
+
+		final Matrix actualResult = MatrixUtils.matrixSum(a.view(1, 1, 2, 2), b);
+		for (int i = 0; i < expectedResult.length; i++) {
+			for (int j = 0; j < expectedResult[0].length; j++) {
+				Assert.assertEquals(expectedResult[i][j], actualResult.get(i, j), 0.00001);
+			}
+		}
+
+		final Vector column = a.column(2);
+		Assert.assertEquals(3, column.getLength());
+		Assert.assertEquals(3, column.get(0), 0.00001);
+		Assert.assertEquals(7, column.get(1), 0.00001);
+		Assert.assertEquals(11, column.get(2), 0.00001);
+	}
+
+	@Test
+	public void testMatrixVectorMultiply() {
+		final Matrix a = Matrix.fromArray(new double[][]{
+				{1, 2, 3},
+				{4, 5, 6},
+		});
+		final Vector x = new Vector(new double[]{1, 0, -1});
+		final double[] expectedResult = {-2, -2};
+
+		final Vector y = new Vector(2);
+		MatrixUtils.matrixVectorMultiply(a, x, y);
+		for (int i = 0; i < expectedResult.length; i++) {
+			Assert.assertEquals(expectedResult[i], y.get(i), 0.00001);
+		}
+	}
+
+	@Test
+	public void testBlockedMultiplyOnRandomShapes() {
+		final Random random = new Random(4);
+		final int[][] shapes = {
+				{1, 1, 1},
+				{3, 4, 3},
+				{7, 13, 5},
+				{65, 129, 257},
+				{10, 784, 1},
+				{33, 717, 70},
+		};
+
+		for (final int[] shape : shapes) {
+			final double[][] a = randomMatrix(random, shape[0], shape[1]);
+			final double[][] b = randomMatrix(random, shape[1], shape[2]);
+			final double[][] expectedResult = MatrixUtils.matrixMultiply(a, b);
+
+			final Matrix blockedResult = MatrixUtils.matrixMultiplyBlocked(Matrix.fromArray(a), Matrix.fromArray(b));
+			final Matrix transposedResult = new Matrix(shape[0], shape[2]);
+			MatrixUtils.matrixMultiplyTransposed(
+					Matrix.fromArray(a),
+					Matrix.fromArray(MatrixUtils.matrixTranspose(b)),
+					transposedResult
+			);
+
+			for (int i = 0; i < expectedResult.length; i++) {
+				for (int j = 0; j < expectedResult[0].length; j++) {
+					Assert.assertEquals(expectedResult[i][j], blockedResult.get(i, j), 0.00001);
+					Assert.assertEquals(expectedResult[i][j], transposedResult.get(i, j), 0.00001);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelFailureWaitsForChunks() {
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		final ParallelExecution parallelExecution = new ParallelExecution(executorService, 4, 1);
+		final AtomicInteger startedChunks = new AtomicInteger();
+		final AtomicInteger runningChunks = new AtomicInteger();
+		try {
+			parallelExecution.forEachRange(4, 1, new ParallelExecution.RangeTask() {
+
+				@Override
+				public void run(final int from, final int to) {
+					if (to == 4) {
+						throw new IllegalStateException("Caller chunk failed");
+					}
+					startedChunks.incrementAndGet();
+					runningChunks.incrementAndGet();
+					try {
+						Thread.sleep(100);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					runningChunks.decrementAndGet();
+				}
+			});
+			Assert.fail("Failure of the caller chunk is lost");
+		} catch (final IllegalStateException e) {
+			// the one executor thread had time for one chunk at most, the rest are skipped
+			Assert.assertEquals(0, runningChunks.get());
+			Assert.assertTrue(startedChunks.get() <= 1);
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelFailureKeepsType() {
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			new ParallelExecution(executorService, 2, 1).forEachRange(2, 1, new ParallelExecution.RangeTask() {
+
+				@Override
+				public void run(final int from, final int to) {
+					if (from == 0) {
+						throw new IllegalArgumentException("Worker chunk failed");
+					}
+				}
+			});
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testNestedParallelRange() {
+		// one thread, so a nested range submitted to the pool from a chunk would wait for itself forever
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		final ParallelExecution parallelExecution = new ParallelExecution(executorService, 2, 1);
+		final AtomicInteger itemsNumber = new AtomicInteger();
+		try {
+			parallelExecution.forEachRange(2, 1, new ParallelExecution.RangeTask() {
+
+				@Override
+				public void run(final int from, final int to) {
+					parallelExecution.forEachRange(4, 1, new ParallelExecution.RangeTask() {
+
+						@Override
+						public void run(final int from, final int to) {
+							itemsNumber.addAndGet(to - from);
+						}
+					});
+				}
+			});
+		} finally {
+			executorService.shutdown();
+		}
+
+		Assert.assertEquals(8, itemsNumber.get());
+	}
+
+	@Test
+	public void testParallelMultiply() {
+		final Random random = new Random(5);
+		final double[][] a = randomMatrix(random, 45, 71);
+		final double[][] b = randomMatrix(random, 71, 33);
+		final double[][] expectedResult = MatrixUtils.matrixMultiply(a, b);
+
+		final ExecutorService executorService = Executors.newFixedThreadPool(3);
+		final ParallelExecution parallelExecution = new ParallelExecution(executorService, 3, 1);
+		final Matrix blockedResult = new Matrix(45, 33);
+		final Matrix transposedResult = new Matrix(45, 33);
+		try {
+			MatrixUtils.matrixMultiplyBlocked(Matrix.fromArray(a), Matrix.fromArray(b), blockedResult, parallelExecution);
+			MatrixUtils.matrixMultiplyTransposed(
+					Matrix.fromArray(a),
+					Matrix.fromArray(MatrixUtils.matrixTranspose(b)),
+					transposedResult,
+					parallelExecution
+			);
+		} finally {
+			executorService.shutdown();
+		}
+
+		for (int i = 0; i < expectedResult.length; i++) {
+			for (int j = 0; j < expectedResult[0].length; j++) {
+				Assert.assertEquals(expectedResult[i][j], blockedResult.get(i, j), 0.00001);
+				Assert.assertEquals(expectedResult[i][j], transposedResult.get(i, j), 0.00001);
+			}
+		}
+	}
+
+	@Test
+	public void testSparseMultiply() {
+		final Random random = new Random(11);
+		final double[][] a = randomMatrix(random, 13, 29);
+		for (final double[] row : a) {
+			for (int j = 0; j < row.length; j++) {
+				if (random.nextInt(3) != 0) {
+					row[j] = 0;
+				}
+			}
+		}
+		final Matrix denseA = Matrix.fromArray(a);
+		final SparseMatrix sparseA = SparseMatrix.fromMatrix(denseA);
+		Assert.assertEquals(denseA.getRows(), sparseA.getRows());
+		Assert.assertTrue(sparseA.getDensity() < 0.5);
+
+		final Vector x = new Vector(randomMatrix(random, 1, 29)[0]);
+		final Vector expectedVector = new Vector(13);
+		final Vector actualVector = new Vector(13);
+		MatrixUtils.matrixVectorMultiply(denseA, x, expectedVector);
+		MatrixUtils.matrixVectorMultiply(sparseA, x, actualVector);
+
+		final Matrix b = Matrix.fromArray(randomMatrix(random, 29, 7));
+		final Matrix expectedProduct = MatrixUtils.matrixMultiply(denseA, b);
+		final Matrix actualProduct = new Matrix(13, 7);
+		MatrixUtils.matrixMultiply(sparseA, b, actualProduct);
+
+		final Matrix c = Matrix.fromArray(randomMatrix(random, 5, 29));
+		final Matrix expectedTransposedProduct = new Matrix(5, 13);
+		final Matrix actualTransposedProduct = new Matrix(5, 13);
+		MatrixUtils.matrixMultiplyTransposed(c, denseA, expectedTransposedProduct);
+		MatrixUtils.matrixMultiplyTransposed(c, sparseA, actualTransposedProduct);
+
+		for (int i = 0; i < 13; i++) {
+			Assert.assertEquals(expectedVector.get(i), actualVector.get(i), 1e-12);
+			for (int j = 0; j < 29; j++) {
+				Assert.assertEquals(denseA.get(i, j), sparseA.toMatrix().get(i, j), 0);
+			}
+			for (int j = 0; j < 7; j++) {
+				Assert.assertEquals(expectedProduct.get(i, j), actualProduct.get(i, j), 1e-12);
+			}
+			for (int n = 0; n < 5; n++) {
+				Assert.assertEquals(expectedTransposedProduct.get(n, i), actualTransposedProduct.get(n, i), 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testBulkLoader() throws Exception {
+		final Random random = new Random(10);
+		final double[][] expectedResult = randomMatrix(random, 37, 71);
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+		dataOutputStream.writeInt(expectedResult.length);
+		dataOutputStream.writeInt(expectedResult[0].length);
+		for (int j = 0; j < expectedResult[0].length; j++) {
+			for (final double[] row : expectedResult) {
+				dataOutputStream.writeDouble(row[j]);
+			}
+		}
+		final byte[] bytes = outputStream.toByteArray();
+
+		final double[][] legacyResult = MatrixLoader.load(new ByteArrayInputStream(bytes));
+		final Matrix actualResult = MatrixLoader.loadMatrixBulk(new ByteArrayInputStream(bytes));
+		Assert.assertEquals(expectedResult.length, actualResult.getRows());
+		Assert.assertEquals(expectedResult[0].length, actualResult.getColumns());
+		for (int i = 0; i < expectedResult.length; i++) {
+			for (int j = 0; j < expectedResult[0].length; j++) {
+				Assert.assertEquals(expectedResult[i][j], legacyResult[i][j], 0);
+				Assert.assertEquals(expectedResult[i][j], actualResult.get(i, j), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testKernels() {
+		final Kernels kernels = Kernels.getDefault();
+		final Random random = new Random(8);
+
+		for (int length = 1; length < 12; length++) {
+			final double[] a = randomMatrix(random, 1, length + 2)[0];
+			final double[] b = randomMatrix(random, 1, length + 2)[0];
+			final int[] indexes = new int[length];
+			double expectedDot = 0;
+			double expectedGatherDot = 0;
+			for (int i = 0; i < length; i++) {
+				indexes[i] = random.nextInt(b.length);
+				expectedDot += a[i + 1] * b[i + 2];
+				expectedGatherDot += a[i] * b[indexes[i]];
+			}
+			Assert.assertEquals(expectedDot, kernels.dot(a, 1, b, 2, length), 0.00001);
+			Assert.assertEquals(expectedGatherDot, kernels.gatherDot(a, 0, b, indexes), 0.00001);
+
+			final double[] y = new double[length];
+			kernels.softMax(a, 0, y, 0, length);
+			double sum = 0;
+			for (int i = 0; i < length; i++) {
+				sum += y[i];
+				Assert.assertEquals(Math.exp(a[i]) / Math.exp(a[0]), y[i] / y[0], 0.00001);
+			}
+			Assert.assertEquals(1, sum, 0.00001);
+
+			// scaled so exp overflows unless the max over all lanes is subtracted
+			final float[] scaled = new float[length];
+			int maxIndex = 0;
+			for (int i = 0; i < length; i++) {
+				scaled[i] = (float) a[i] * 1000;
+				if (scaled[i] > scaled[maxIndex]) {
+					maxIndex = i;
+				}
+			}
+			final float[] floatY = new float[length];
+			kernels.softMax(scaled, 0, floatY, 0, length);
+			Assert.assertEquals(1, floatY[maxIndex], 0.001);
+		}
+	}
+
+	private static double[][] randomMatrix(final Random random, final int rows, final int columns) {
+		final double[][] a = new double[rows][columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				a[i][j] = random.nextDouble() * 2 - 1;
+			}
+		}
+		return a;
+	}
 }
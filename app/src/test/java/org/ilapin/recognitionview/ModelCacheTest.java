@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.neuralnetwork.ModelCache;
+import org.ilapin.neuralnetwork.ModelKey;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ModelCacheTest {
+
+	private final ConcurrentHashMap<ModelKey, AtomicInteger> mLoadsNumbers = new ConcurrentHashMap<>();
+
+	private final ModelCache.Loader mLoader = new ModelCache.Loader() {
+
+		@Override
+		public NeuralNetwork load(final ModelKey key) throws IOException {
+			mLoadsNumbers.putIfAbsent(key, new AtomicInteger());
+			mLoadsNumbers.get(key).incrementAndGet();
+			return TestNetworks.loadNetwork();
+		}
+	};
+
+	@Test
+	public void testConcurrentAcquire() throws Exception {
+		final ModelCache cache = new ModelCache(mLoader, 2);
+		final ModelKey key = new ModelKey("digits", 1);
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+		final List<Future<ModelCache.Handle>> handles = new ArrayList<>();
+		try {
+			for (int i = 0; i < 8; i++) {
+				handles.add(executorService.submit(new Callable<ModelCache.Handle>() {
+
+					@Override
+					public ModelCache.Handle call() {
+						return cache.acquire(key);
+					}
+				}));
+			}
+
+			final NeuralNetwork neuralNetwork = handles.get(0).get().getNeuralNetwork();
+			for (final Future<ModelCache.Handle> handle : handles) {
+				Assert.assertSame(neuralNetwork, handle.get().getNeuralNetwork());
+				handle.get().close();
+			}
+		} finally {
+			executorService.shutdown();
+		}
+
+		Assert.assertEquals(1, mLoadsNumbers.get(key).get());
+		Assert.assertTrue(cache.contains(key));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		final ModelCache cache = new ModelCache(mLoader, 2);
+		final ModelKey digits = new ModelKey("digits", 1);
+		final ModelKey digitsUpdate = new ModelKey("digits", 2);
+		final ModelKey letters = new ModelKey("letters", 1);
+
+		final ModelCache.Handle digitsHandle = cache.acquire(digits);
+		cache.acquire(digitsUpdate).close();
+		cache.acquire(letters).close();
+
+		// digits is the least recently acquired but still in use
+		Assert.assertEquals(2, cache.getModelsNumber());
+		Assert.assertTrue(cache.contains(digits));
+		Assert.assertFalse(cache.contains(digitsUpdate));
+		Assert.assertTrue(cache.contains(letters));
+
+		digitsHandle.close();
+		digitsHandle.close();
+		cache.acquire(letters).close();
+		Assert.assertSame(digitsHandle.getKey(), digits);
+		Assert.assertEquals(1, mLoadsNumbers.get(letters).get());
+
+		cache.trim();
+		Assert.assertEquals(0, cache.getModelsNumber());
+		cache.acquire(digits).close();
+		Assert.assertEquals(2, mLoadsNumbers.get(digits).get());
+	}
+}
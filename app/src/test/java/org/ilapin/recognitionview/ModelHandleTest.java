@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.neuralnetwork.ModelCache;
+import org.ilapin.neuralnetwork.ModelHandle;
+import org.ilapin.neuralnetwork.ModelKey;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkProvider;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+public class ModelHandleTest {
+
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+	};
+
+	@Test
+	public void testSwapWhileLeased() throws Exception {
+		final ModelCache cache = new ModelCache(new ModelCache.Loader() {
+
+			@Override
+			public NeuralNetwork load(final ModelKey key) throws IOException {
+				return TestNetworks.loadNetwork();
+			}
+		}, 1);
+		final ModelKey oldKey = new ModelKey("digits", 1);
+		final ModelKey newKey = new ModelKey("digits", 2);
+
+		final NeuralNetworkProvider provider = new NeuralNetworkProvider(new Callable<NeuralNetwork>() {
+
+			@Override
+			public NeuralNetwork call() throws Exception {
+				return TestNetworks.loadNetwork();
+			}
+		}, DIRECT_EXECUTOR);
+		final ModelHandle modelHandle = new ModelHandle(provider);
+		Assert.assertEquals(0, modelHandle.getVersionNumber());
+		final ModelHandle.Lease initialLease = modelHandle.acquire();
+		Assert.assertSame(provider.get(), initialLease.getNeuralNetwork());
+		initialLease.close();
+
+		modelHandle.swap(cache.acquire(oldKey));
+		final ModelHandle.Lease oldLease = modelHandle.acquire();
+		final NeuralNetwork oldNeuralNetwork = oldLease.getNeuralNetwork();
+
+		modelHandle.swap(cache.acquire(newKey));
+		final ModelHandle.Lease newLease = modelHandle.acquire();
+		Assert.assertNotSame(oldNeuralNetwork, newLease.getNeuralNetwork());
+		Assert.assertTrue(newLease.getVersionNumber() > oldLease.getVersionNumber());
+
+		// the in-flight request still holds the old version, so the cache cannot drop it
+		Assert.assertSame(oldNeuralNetwork, oldLease.getNeuralNetwork());
+		Assert.assertTrue(cache.contains(oldKey));
+
+		oldLease.close();
+		oldLease.close();
+		newLease.close();
+		Assert.assertFalse(cache.contains(oldKey));
+		Assert.assertTrue(cache.contains(newKey));
+	}
+
+	@Test
+	public void testSwapAsync() throws Exception {
+		final NeuralNetwork initialNeuralNetwork = TestNetworks.loadNetwork();
+		final ModelHandle modelHandle = new ModelHandle(initialNeuralNetwork);
+
+		final NeuralNetwork newNeuralNetwork = modelHandle.swapAsync(new Callable<NeuralNetwork>() {
+
+			@Override
+			public NeuralNetwork call() throws Exception {
+				return TestNetworks.loadNetwork();
+			}
+		}, DIRECT_EXECUTOR).get();
+		Assert.assertEquals(2, modelHandle.getVersionNumber());
+
+		final ModelHandle.Lease lease = modelHandle.acquire();
+		Assert.assertSame(newNeuralNetwork, lease.getNeuralNetwork());
+		lease.close();
+
+		try {
+			lease.getNeuralNetwork();
+			Assert.fail();
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+	}
+}
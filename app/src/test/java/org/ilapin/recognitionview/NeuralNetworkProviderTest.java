@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkProvider;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NeuralNetworkProviderTest {
+	@Test
+	public void testSingleLoad() throws Exception {
+		final AtomicInteger loadsNumber = new AtomicInteger();
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			final NeuralNetworkProvider provider = new NeuralNetworkProvider(new Callable<NeuralNetwork>() {
+
+				@Override
+				public NeuralNetwork call() throws Exception {
+					loadsNumber.incrementAndGet();
+					return TestNetworks.loadNetwork();
+				}
+			}, executorService);
+
+			final List<Future<NeuralNetwork>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executorService.submit(new Callable<NeuralNetwork>() {
+
+					@Override
+					public NeuralNetwork call() {
+						return provider.get();
+					}
+				}));
+			}
+
+			final NeuralNetwork neuralNetwork = provider.start().get();
+			for (final Future<NeuralNetwork> result : results) {
+				Assert.assertSame(neuralNetwork, result.get());
+			}
+			Assert.assertTrue(provider.isReady());
+			Assert.assertEquals(1, loadsNumber.get());
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testRetryAfterFailure() throws Exception {
+		final AtomicInteger loadsNumber = new AtomicInteger();
+		final NeuralNetworkProvider provider = new NeuralNetworkProvider(new Callable<NeuralNetwork>() {
+
+			@Override
+			public NeuralNetwork call() throws Exception {
+				if (loadsNumber.incrementAndGet() == 1) {
+					throw new IOException("Asset is not available yet");
+				}
+				return TestNetworks.loadNetwork();
+			}
+		}, new Executor() {
+
+			@Override
+			public void execute(final Runnable command) {
+				command.run();
+			}
+		});
+
+		try {
+			provider.get();
+			Assert.fail();
+		} catch (final RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertFalse(provider.isReady());
+
+		Assert.assertNotNull(provider.get());
+		Assert.assertTrue(provider.isReady());
+		Assert.assertEquals(2, loadsNumber.get());
+	}
+}
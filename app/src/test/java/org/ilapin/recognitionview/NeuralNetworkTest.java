@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.matrix.ParallelExecution;
+import org.ilapin.matrix.Vector;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkLoader;
+import org.ilapin.neuralnetwork.WeightStorage;
+import org.ilapin.neuralnetwork.Workspace;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NeuralNetworkTest {
+	@Test
+	public void testWorkspaceReuse() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final Workspace workspace = neuralNetwork.createWorkspace();
+		final double[] actualResult = new double[neuralNetwork.getOutputsNumber()];
+		final Random random = new Random(2);
+
+		for (int n = 0; n < 10; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			final double[] expectedResult = neuralNetwork.calculateOutputs(inputs);
+			neuralNetwork.calculateOutputs(inputs, workspace, actualResult);
+
+			double sum = 0;
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult[i], 0.00001);
+				sum += actualResult[i];
+			}
+			Assert.assertEquals(1, sum, 0.00001);
+		}
+	}
+
+	/**
+	 * Checks the input layer, with normalization folded into its weights, against the unfused computation:
+	 * gather, {@code (x - xOffset) * gain + yMin}, {@code W * x + b}, tanh-sigmoid, output layer, soft max.
+	 */
+	@Test
+	public void testFoldedNormalization() {
+		final Random random = new Random(16);
+		final int inputsNumber = 100;
+		final int keptInputsNumber = 40;
+		final int neuronsNumber = 16;
+		final int outputsNumber = 10;
+		final double yMin = -1;
+
+		final int[] keepInputsIndexes = new int[keptInputsNumber];
+		for (int i = 0; i < keptInputsNumber; i++) {
+			keepInputsIndexes[i] = i * 2 + 7;
+		}
+		// a third of the input weights are zero so the sparse storage skips some
+		final double[][] inputWeights = randomArray(random, neuronsNumber, keptInputsNumber, 1);
+		for (int j = 0; j < neuronsNumber; j++) {
+			for (int i = 0; i < keptInputsNumber; i++) {
+				if (random.nextInt(3) == 0) {
+					inputWeights[j][i] = 0;
+				}
+			}
+		}
+		final double[][] inputBiases = randomArray(random, neuronsNumber, 1, 1);
+		final double[][] layerWeights = randomArray(random, outputsNumber, neuronsNumber, 1);
+		final double[][] layerBiases = randomArray(random, outputsNumber, 1, 1);
+		final double[][] xOffset = randomArray(random, keptInputsNumber, 1, 50);
+		final double[][] gain = randomArray(random, keptInputsNumber, 1, 0.01);
+
+		final Matrix inputs = new Matrix(8, inputsNumber);
+		for (int n = 0; n < inputs.getRows(); n++) {
+			for (int i = 0; i < inputsNumber; i++) {
+				inputs.set(n, i, random.nextInt(4) == 0 ? 0xff : 0);
+			}
+		}
+
+		for (final WeightStorage storage : WeightStorage.values()) {
+			final NeuralNetwork neuralNetwork = new NeuralNetwork.Builder()
+					.setInputWeights(Matrix.fromArray(inputWeights))
+					.setInputBiases(Matrix.fromArray(inputBiases))
+					.setLayerWeights(Matrix.fromArray(layerWeights))
+					.setLayerBiases(Matrix.fromArray(layerBiases))
+					.setXOffset(Matrix.fromArray(xOffset))
+					.setGain(Matrix.fromArray(gain))
+					.setKeepInputsIndexes(keepInputsIndexes)
+					.setYMin(yMin)
+					.setInputWeightsStorage(storage)
+					.build();
+			final Matrix actualBatchResult = neuralNetwork.calculateOutputsBatch(inputs);
+
+			for (int n = 0; n < inputs.getRows(); n++) {
+				final double[][] x = new double[keptInputsNumber][1];
+				for (int i = 0; i < keptInputsNumber; i++) {
+					final double input = inputs.get(n, keepInputsIndexes[i]);
+					x[i][0] = (input - xOffset[i][0]) * gain[i][0] + yMin;
+				}
+				final double[][] a1 = MatrixUtils.matrixSum(MatrixUtils.matrixMultiply(inputWeights, x), inputBiases);
+				for (int j = 0; j < neuronsNumber; j++) {
+					a1[j][0] = Math.tanh(a1[j][0]);
+				}
+				final double[][] n2 = MatrixUtils.matrixSum(MatrixUtils.matrixMultiply(layerWeights, a1), layerBiases);
+				double denominator = 0;
+				for (int i = 0; i < outputsNumber; i++) {
+					denominator += Math.exp(n2[i][0]);
+				}
+
+				final double[] actualResult = neuralNetwork.calculateOutputs(inputs.row(n).toArray());
+				for (int i = 0; i < outputsNumber; i++) {
+					final double expected = Math.exp(n2[i][0]) / denominator;
+					Assert.assertEquals(storage + ", sample " + n, expected, actualResult[i], 1e-12);
+					Assert.assertEquals(storage + ", sample " + n, expected, actualBatchResult.get(n, i), 1e-12);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentInference() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final Random random = new Random(4);
+		final int samplesNumber = 64;
+
+		final double[][] inputs = new double[samplesNumber][];
+		final double[][] expectedResult = new double[samplesNumber][];
+		for (int n = 0; n < samplesNumber; n++) {
+			inputs[n] = TestNetworks.randomInputs(random);
+			expectedResult[n] = neuralNetwork.calculateOutputs(inputs[n]);
+		}
+
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		final List<Future<double[][]>> results = new ArrayList<>();
+		try {
+			for (int t = 0; t < 4; t++) {
+				results.add(executorService.submit(new Callable<double[][]>() {
+
+					@Override
+					public double[][] call() {
+						final double[][] outputs = new double[samplesNumber][neuralNetwork.getOutputsNumber()];
+						for (int n = 0; n < samplesNumber; n++) {
+							neuralNetwork.calculateOutputs(inputs[n], outputs[n]);
+						}
+						return outputs;
+					}
+				}));
+			}
+
+			for (final Future<double[][]> result : results) {
+				final double[][] actualResult = result.get();
+				for (int n = 0; n < samplesNumber; n++) {
+					for (int i = 0; i < expectedResult[n].length; i++) {
+						Assert.assertEquals(expectedResult[n][i], actualResult[n][i], 0);
+					}
+				}
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testBuilderValidation() throws Exception {
+		// the valid parameters build, so each failure below comes from the one mismatched parameter
+		Assert.assertNotNull(createValidBuilder().build());
+
+		final int keptInputsNumber = TestNetworks.loadAsset(NeuralNetworkLoader.KEEP).getColumns();
+		final int neuronsNumber = TestNetworks.loadAsset(NeuralNetworkLoader.INPUT_BIASES).getRows();
+		final int outputsNumber = TestNetworks.loadAsset(NeuralNetworkLoader.LAYER_BIASES).getRows();
+
+		assertBuildFails(
+				createValidBuilder().setInputWeights(new Matrix(neuronsNumber, keptInputsNumber + 1)),
+				"Input weights do not fit keep inputs indexes"
+		);
+		assertBuildFails(
+				createValidBuilder().setXOffset(new Matrix(keptInputsNumber - 1, 1)),
+				"X offsets do not fit neural network"
+		);
+		assertBuildFails(
+				createValidBuilder().setGain(new Matrix(keptInputsNumber, 2)),
+				"Gains do not fit neural network"
+		);
+		assertBuildFails(
+				createValidBuilder().setInputBiases(new Matrix(neuronsNumber + 1, 1)),
+				"Input biases not fit neural network"
+		);
+		assertBuildFails(
+				createValidBuilder().setLayerWeights(new Matrix(outputsNumber, neuronsNumber - 1)),
+				"Layer weights do not fit neural network"
+		);
+		assertBuildFails(
+				createValidBuilder().setLayerBiases(new Matrix(1, outputsNumber)),
+				"Layer biases not fit neural network"
+		);
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final Random random = new Random(3);
+		final int samplesNumber = 37;
+
+		final Matrix inputs = new Matrix(samplesNumber, TestNetworks.IMAGE_SIZE);
+		for (int n = 0; n < samplesNumber; n++) {
+			new Vector(TestNetworks.randomInputs(random)).copyTo(inputs.row(n));
+		}
+
+		final Matrix actualResult = neuralNetwork.calculateOutputsBatch(inputs);
+		Assert.assertEquals(samplesNumber, actualResult.getRows());
+		Assert.assertEquals(neuralNetwork.getOutputsNumber(), actualResult.getColumns());
+
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		final Matrix parallelResult = new Matrix(samplesNumber, neuralNetwork.getOutputsNumber());
+		try {
+			neuralNetwork.calculateOutputsBatch(inputs, parallelResult, new ParallelExecution(executorService, 4, 1));
+		} finally {
+			executorService.shutdown();
+		}
+
+		for (int n = 0; n < samplesNumber; n++) {
+			final double[] expectedResult = neuralNetwork.calculateOutputs(inputs.row(n).toArray());
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult.get(n, i), 0.00001);
+				Assert.assertEquals(expectedResult[i], parallelResult.get(n, i), 0.00001);
+			}
+		}
+	}
+
+	@Test
+	public void testLoaderClosesStreams() throws Exception {
+		final AtomicInteger closedStreamsNumber = new AtomicInteger();
+		final NeuralNetwork neuralNetwork = NeuralNetworkLoader.load(new NeuralNetworkLoader.Source() {
+
+			@Override
+			public InputStream open(final String name) throws IOException {
+				final InputStream inputStream;
+				if (name.equals(NeuralNetworkLoader.INPUT_LAYER_WEIGHTS)) {
+					final Matrix keep = TestNetworks.loadAsset("keep");
+					inputStream = new ByteArrayInputStream(toFileBytes(TestNetworks.loadInputLayerWeights(
+							TestNetworks.loadAsset("input_biases").getRows(), keep.getColumns()
+					)));
+				} else {
+					inputStream = new FileInputStream(new File("src/main/assets", name));
+				}
+
+				return new FilterInputStream(inputStream) {
+
+					@Override
+					public void close() throws IOException {
+						closedStreamsNumber.incrementAndGet();
+						super.close();
+					}
+				};
+			}
+		});
+
+		Assert.assertEquals(TestNetworks.loadNetwork().getOutputsNumber(), neuralNetwork.getOutputsNumber());
+		Assert.assertEquals(NeuralNetworkLoader.PARAMETER_NAMES.length, closedStreamsNumber.get());
+	}
+
+	private static NeuralNetwork.Builder createValidBuilder() throws IOException {
+		final Matrix inputBiases = TestNetworks.loadAsset(NeuralNetworkLoader.INPUT_BIASES);
+		final Matrix keep = TestNetworks.loadAsset(NeuralNetworkLoader.KEEP);
+		final int[] keepInputsIndexes = new int[keep.getColumns()];
+		for (int i = 0; i < keepInputsIndexes.length; i++) {
+			keepInputsIndexes[i] = (int) keep.get(0, i);
+		}
+
+		return new NeuralNetwork.Builder()
+				.setInputWeights(TestNetworks.loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()))
+				.setInputBiases(inputBiases)
+				.setLayerWeights(TestNetworks.loadAsset(NeuralNetworkLoader.LAYER_WEIGHTS))
+				.setLayerBiases(TestNetworks.loadAsset(NeuralNetworkLoader.LAYER_BIASES))
+				.setXOffset(TestNetworks.loadAsset(NeuralNetworkLoader.X_OFFSET))
+				.setGain(TestNetworks.loadAsset(NeuralNetworkLoader.GAIN))
+				.setKeepInputsIndexes(keepInputsIndexes);
+	}
+
+	private static void assertBuildFails(final NeuralNetwork.Builder builder, final String expectedMessage) {
+		try {
+			builder.build();
+			Assert.fail("Built with a parameter that does not fit: " + expectedMessage);
+		} catch (final IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(expectedMessage));
+		}
+	}
+
+	private static double[][] randomArray(final Random random, final int rows, final int columns,
+										  final double scale) {
+		final double[][] a = new double[rows][columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				a[i][j] = (random.nextDouble() * 2 - 1) * scale;
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Matrix in the column-major format read by MatrixLoader.
+	 */
+	private static byte[] toFileBytes(final Matrix matrix) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream outputStream = new DataOutputStream(bytes);
+		outputStream.writeInt(matrix.getRows());
+		outputStream.writeInt(matrix.getColumns());
+		for (int j = 0; j < matrix.getColumns(); j++) {
+			for (int i = 0; i < matrix.getRows(); i++) {
+				outputStream.writeDouble(matrix.get(i, j));
+			}
+		}
+		outputStream.close();
+		return bytes.toByteArray();
+	}
+}
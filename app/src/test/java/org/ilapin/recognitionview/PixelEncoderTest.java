@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.raster.PixelEncoder;
+import org.junit.Test;
+
+public class PixelEncoderTest {
+	@Test
+	public void testColumnMajor() {
+		final PixelEncoder encoder = new PixelEncoder(3, 2);
+		final int[] pixels = encoder.getPixels();
+		pixels[0 * 3 + 1] = 0xff000000; // black at x = 1, y = 0
+		pixels[1 * 3 + 2] = 0xff8080f0; // light at x = 2, y = 1
+		pixels[1 * 3 + 0] = 0x00000000; // transparent at x = 0, y = 1
+
+		final double[] inputs = encoder.encode();
+		Assert.assertEquals(6, inputs.length);
+		Assert.assertEquals(0xff, inputs[1 * 2 + 0], 0);
+		Assert.assertEquals(0xff - 0xf0, inputs[2 * 2 + 1], 0);
+		Assert.assertEquals(0, inputs[0 * 2 + 1], 0);
+		Assert.assertSame(inputs, encoder.encode());
+
+		inputs[1 * 2 + 1] = 100.2;
+		final double[] decodedInputs = new double[6];
+		encoder.encode(encoder.decode(inputs), 0, 3, decodedInputs);
+		Assert.assertEquals(0xff, decodedInputs[1 * 2 + 0], 0);
+		Assert.assertEquals(100, decodedInputs[1 * 2 + 1], 0);
+		Assert.assertEquals(0, decodedInputs[0], 0);
+
+		// 3x2 region starting at x = 1, y = 1 of a 4 pixels wide image
+		final int[] regionPixels = {
+				0, 0, 0, 0,
+				0, 0xff000000, 0, 0,
+				0, 0, 0, 0xff000000,
+		};
+		final double[] regionInputs = new double[6];
+		encoder.encode(regionPixels, 4 + 1, 4, regionInputs);
+		Assert.assertEquals(0xff, regionInputs[0], 0);
+		Assert.assertEquals(0xff, regionInputs[2 * 2 + 1], 0);
+		Assert.assertEquals(0, regionInputs[1], 0);
+		Assert.assertEquals(0, regionInputs[1 * 2 + 1], 0);
+	}
+
+	@Test
+	public void testRowMajor() {
+		final PixelEncoder encoder = new PixelEncoder(3, 2, PixelEncoder.Orientation.ROW_MAJOR);
+		final int[] pixels = {
+				0, 0, 0, 0,
+				0, 0xff000000, 0, 0,
+				0, 0, 0xff000000, 0,
+		};
+		final double[] inputs = new double[6];
+
+		// 3x2 region starting at x = 1, y = 1 of a 4 pixels wide image
+		encoder.encode(pixels, 4 + 1, 4, inputs);
+		Assert.assertEquals(0xff, inputs[0], 0);
+		Assert.assertEquals(0xff, inputs[1 * 3 + 1], 0);
+		Assert.assertEquals(0, inputs[1], 0);
+		Assert.assertEquals(0, inputs[1 * 3 + 2], 0);
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.OutputsComparison;
+import org.ilapin.neuralnetwork.QuantizedNeuralNetwork;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class QuantizedNeuralNetworkTest {
+	@Test
+	public void testAccuracyAgainstDoublePrecision() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final QuantizedNeuralNetwork quantizedNeuralNetwork = new QuantizedNeuralNetwork(neuralNetwork);
+
+		final OutputsComparison comparison = new OutputsComparison();
+		final Random random = new Random(7);
+		for (int n = 0; n < 200; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			comparison.add(neuralNetwork.calculateOutputs(inputs), quantizedNeuralNetwork.calculateOutputs(inputs));
+		}
+
+		// logits span tens of units, so near ties may flip and the max delta is not meaningful on its own
+		Assert.assertTrue(comparison.toString(), comparison.getMeanAbsoluteDelta() < 0.02);
+		Assert.assertTrue(comparison.toString(), comparison.getDecisionAgreement() >= 0.9);
+	}
+
+	/**
+	 * The accuracy test above runs on random fixture weights when input_layer_weights is not checked in,
+	 * this one only on the trained model.
+	 */
+	@Test
+	public void testShippedModelAccuracy() throws Exception {
+		Assume.assumeTrue(TestNetworks.hasInputLayerWeights());
+
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final QuantizedNeuralNetwork quantizedNeuralNetwork = new QuantizedNeuralNetwork(neuralNetwork);
+
+		final OutputsComparison comparison = new OutputsComparison();
+		final Random random = new Random(8);
+		for (int n = 0; n < 200; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			comparison.add(neuralNetwork.calculateOutputs(inputs), quantizedNeuralNetwork.calculateOutputs(inputs));
+		}
+
+		Assert.assertTrue(comparison.toString(), comparison.getDecisionAgreement() >= 0.95);
+	}
+
+	@Test
+	public void testWeightsSize() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final QuantizedNeuralNetwork quantizedNeuralNetwork = new QuantizedNeuralNetwork(neuralNetwork);
+
+		final int weightsNumber = 784 * 717 + 10 * 784;
+		Assert.assertEquals(weightsNumber, quantizedNeuralNetwork.getWeightsSize());
+	}
+}
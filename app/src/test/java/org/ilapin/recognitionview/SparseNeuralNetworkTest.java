@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.Vector;
+import org.ilapin.neuralnetwork.MagnitudePruner;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.OutputsComparison;
+import org.ilapin.neuralnetwork.WeightStorage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class SparseNeuralNetworkTest {
+	@Test
+	public void testSparseStorage() throws Exception {
+		final NeuralNetwork denseNeuralNetwork = buildNetwork(0.8, WeightStorage.DENSE);
+		final NeuralNetwork sparseNeuralNetwork = buildNetwork(0.8, WeightStorage.SPARSE);
+		final Random random = new Random(12);
+
+		final int samplesNumber = 20;
+		final Matrix inputs = new Matrix(samplesNumber, TestNetworks.IMAGE_SIZE);
+		for (int n = 0; n < samplesNumber; n++) {
+			new Vector(TestNetworks.randomInputs(random)).copyTo(inputs.row(n));
+		}
+		final Matrix actualBatchResult = sparseNeuralNetwork.calculateOutputsBatch(inputs);
+
+		for (int n = 0; n < samplesNumber; n++) {
+			final double[] expectedResult = denseNeuralNetwork.calculateOutputs(inputs.row(n).toArray());
+			final double[] actualResult = sparseNeuralNetwork.calculateOutputs(inputs.row(n).toArray());
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult[i], 1e-12);
+				Assert.assertEquals(expectedResult[i], actualBatchResult.get(n, i), 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testSparseInputs() throws Exception {
+		final NeuralNetwork denseNeuralNetwork = buildNetwork(0, WeightStorage.DENSE);
+		final NeuralNetwork sparseInputsNeuralNetwork = buildNetwork(0, WeightStorage.SPARSE_INPUTS);
+		final Random random = new Random(14);
+
+		final int samplesNumber = 20;
+		final Matrix inputs = new Matrix(samplesNumber, TestNetworks.IMAGE_SIZE);
+		for (int n = 1; n < samplesNumber; n++) {
+			new Vector(TestNetworks.randomInputs(random)).copyTo(inputs.row(n));
+		}
+		final Matrix actualBatchResult = sparseInputsNeuralNetwork.calculateOutputsBatch(inputs);
+
+		for (int n = 0; n < samplesNumber; n++) {
+			final double[] expectedResult = denseNeuralNetwork.calculateOutputs(inputs.row(n).toArray());
+			final double[] actualResult = sparseInputsNeuralNetwork.calculateOutputs(inputs.row(n).toArray());
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult[i], 1e-12);
+				Assert.assertEquals(expectedResult[i], actualBatchResult.get(n, i), 1e-12);
+			}
+		}
+
+		try {
+			new NeuralNetwork.Builder().setLayerWeightsStorage(WeightStorage.SPARSE_INPUTS);
+			Assert.fail();
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPruningAccuracy() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		// fixture weights are random, so they tolerate much less pruning than trained ones
+		final NeuralNetwork prunedNeuralNetwork = buildNetwork(0.1, WeightStorage.SPARSE);
+		final Random random = new Random(13);
+
+		final OutputsComparison comparison = new OutputsComparison();
+		for (int n = 0; n < 200; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			comparison.add(neuralNetwork.calculateOutputs(inputs), prunedNeuralNetwork.calculateOutputs(inputs));
+		}
+
+		Assert.assertTrue(comparison.toString(), comparison.getDecisionAgreement() >= 0.9);
+	}
+
+	@Test
+	public void testPruner() {
+		final Matrix weights = Matrix.fromArray(new double[][] {
+				{0.5, -0.1, 0.3},
+				{-0.2, 0.05, -0.6},
+		});
+
+		final Matrix pruned = MagnitudePruner.prune(weights, 0.5);
+		Assert.assertEquals(0.5, pruned.get(0, 0), 0);
+		Assert.assertEquals(0, pruned.get(0, 1), 0);
+		Assert.assertEquals(0.3, pruned.get(0, 2), 0);
+		Assert.assertEquals(0, pruned.get(1, 0), 0);
+		Assert.assertEquals(0, pruned.get(1, 1), 0);
+		Assert.assertEquals(-0.6, pruned.get(1, 2), 0);
+		Assert.assertEquals(-0.1, weights.get(0, 1), 0);
+	}
+
+	private static NeuralNetwork buildNetwork(final double sparsity, final WeightStorage storage) throws IOException {
+		final Matrix inputBiases = TestNetworks.loadAsset("input_biases");
+		final Matrix keep = TestNetworks.loadAsset("keep");
+		final int[] keepInputsIndexes = new int[keep.getColumns()];
+		for (int i = 0; i < keepInputsIndexes.length; i++) {
+			keepInputsIndexes[i] = (int) keep.get(0, i);
+		}
+
+		return new NeuralNetwork.Builder()
+				.setInputWeights(MagnitudePruner.prune(
+						TestNetworks.loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()), sparsity
+				))
+				.setInputBiases(inputBiases)
+				.setLayerWeights(MagnitudePruner.prune(TestNetworks.loadAsset("layer_weights"), sparsity))
+				.setLayerBiases(TestNetworks.loadAsset("layer_biases"))
+				.setXOffset(TestNetworks.loadAsset("xoffset"))
+				.setGain(TestNetworks.loadAsset("gain"))
+				.setKeepInputsIndexes(keepInputsIndexes)
+				.setYMin(-1)
+				.setInputWeightsStorage(storage)
+				.setLayerWeightsStorage(storage == WeightStorage.SPARSE_INPUTS ? WeightStorage.DENSE : storage)
+				.build();
+	}
+}
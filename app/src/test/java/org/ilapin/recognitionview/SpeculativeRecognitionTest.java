@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.neuralnetwork.ModelHandle;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkProvider;
+import org.ilapin.neuralnetwork.SpeculativeRecognition;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Drives SpeculativeRecognition the way RecognitionView does: start on a finished stroke, finish when the
+ * drawing timeout fires, with the background work and the posted results run by hand.
+ */
+public class SpeculativeRecognitionTest {
+
+	private final Queue<Runnable> mBackground = new ArrayDeque<>();
+	private final Queue<Runnable> mMainThread = new ArrayDeque<>();
+	private final SpeculativeRecognition mSpeculativeRecognition = new SpeculativeRecognition(
+			new QueueExecutor(mBackground), new QueueExecutor(mMainThread));
+
+	@Test
+	public void testResultReadyBeforeTimeout() throws Exception {
+		final NeuralNetwork neuralNetwork = TestNetworks.loadNetwork();
+		final double[] inputs = TestNetworks.randomInputs(new Random(15));
+		mSpeculativeRecognition.start(new ModelHandle(neuralNetwork), 1, inputs);
+		runAll();
+
+		final RecordingListener listener = new RecordingListener();
+		Assert.assertTrue(mSpeculativeRecognition.finish(1, listener));
+		Assert.assertSame(inputs, listener.mInputs);
+		final double[] expectedOutputs = neuralNetwork.calculateOutputs(inputs);
+		for (int i = 0; i < expectedOutputs.length; i++) {
+			Assert.assertEquals(expectedOutputs[i], listener.mOutputs[i], 0);
+		}
+		Assert.assertEquals(0, listener.mUnavailableNumber);
+	}
+
+	@Test
+	public void testTimeoutWhileRunning() throws Exception {
+		mSpeculativeRecognition.start(new ModelHandle(TestNetworks.loadNetwork()), 1,
+				TestNetworks.randomInputs(new Random(16)));
+
+		final RecordingListener listener = new RecordingListener();
+		Assert.assertTrue(mSpeculativeRecognition.finish(1, listener));
+		Assert.assertNull(listener.mOutputs);
+
+		runAll();
+		Assert.assertNotNull(listener.mOutputs);
+		Assert.assertEquals(0, listener.mUnavailableNumber);
+	}
+
+	@Test
+	public void testCancelWhileWaiting() throws Exception {
+		mSpeculativeRecognition.start(new ModelHandle(TestNetworks.loadNetwork()), 1,
+				TestNetworks.randomInputs(new Random(17)));
+		final RecordingListener listener = new RecordingListener();
+		Assert.assertTrue(mSpeculativeRecognition.finish(1, listener));
+
+		// streaming switched off while the view waits for the speculation
+		mSpeculativeRecognition.cancel();
+		Assert.assertEquals(1, listener.mUnavailableNumber);
+
+		runAll();
+		Assert.assertNull(listener.mOutputs);
+		Assert.assertEquals(1, listener.mUnavailableNumber);
+	}
+
+	@Test
+	public void testStaleDrawing() throws Exception {
+		mSpeculativeRecognition.start(new ModelHandle(TestNetworks.loadNetwork()), 1,
+				TestNetworks.randomInputs(new Random(18)));
+		runAll();
+
+		Assert.assertFalse(mSpeculativeRecognition.finish(2, new RecordingListener()));
+
+		mSpeculativeRecognition.cancel();
+		Assert.assertFalse(mSpeculativeRecognition.finish(1, new RecordingListener()));
+	}
+
+	@Test
+	public void testFailure() {
+		final ModelHandle modelHandle = new ModelHandle(new NeuralNetworkProvider(
+				new Callable<NeuralNetwork>() {
+
+					@Override
+					public NeuralNetwork call() throws Exception {
+						throw new IOException("Asset is missing");
+					}
+				}, new QueueExecutor(new ArrayDeque<Runnable>())));
+		mSpeculativeRecognition.start(modelHandle, 1, new double[TestNetworks.IMAGE_SIZE]);
+
+		final RecordingListener listener = new RecordingListener();
+		Assert.assertTrue(mSpeculativeRecognition.finish(1, listener));
+		runAll();
+		Assert.assertNull(listener.mOutputs);
+		Assert.assertEquals(1, listener.mUnavailableNumber);
+	}
+
+	private void runAll() {
+		while (!mBackground.isEmpty() || !mMainThread.isEmpty()) {
+			final Runnable runnable = mBackground.isEmpty() ? mMainThread.poll() : mBackground.poll();
+			runnable.run();
+		}
+	}
+
+	private static class QueueExecutor implements Executor {
+
+		private final Queue<Runnable> mQueue;
+
+		QueueExecutor(final Queue<Runnable> queue) {
+			mQueue = queue;
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			mQueue.add(command);
+		}
+	}
+
+	private static class RecordingListener implements SpeculativeRecognition.Listener {
+
+		double[] mInputs;
+		double[] mOutputs;
+		int mUnavailableNumber;
+
+		@Override
+		public void onRecognized(final double[] inputs, final double[] outputs) {
+			mInputs = inputs;
+			mOutputs = outputs;
+		}
+
+		@Override
+		public void onRecognitionUnavailable() {
+			mUnavailableNumber++;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.raster.StrokeBuffer;
+import org.ilapin.raster.StrokeRasterizer;
+import org.junit.Test;
+
+public class StrokeBufferTest {
+	@Test
+	public void testStrokes() {
+		final StrokeBuffer strokes = new StrokeBuffer();
+		Assert.assertTrue(strokes.isEmpty());
+
+		// a move without a down starts a stroke as well
+		strokes.addPoint(1, 2);
+		strokes.addPoint(3, 4);
+		strokes.startStroke(5, 6);
+		for (int i = 0; i < 1000; i++) {
+			strokes.addPoint(i, -i);
+		}
+
+		Assert.assertEquals(2, strokes.getStrokesNumber());
+		Assert.assertEquals(1003, strokes.getPointsNumber());
+		Assert.assertEquals(0, strokes.getStrokeStart(0));
+		Assert.assertEquals(2, strokes.getStrokePointsNumber(0));
+		Assert.assertEquals(2, strokes.getStrokeStart(1));
+		Assert.assertEquals(1001, strokes.getStrokePointsNumber(1));
+		Assert.assertEquals(3f, strokes.getX(1));
+		Assert.assertEquals(4f, strokes.getY(1));
+		Assert.assertEquals(999f, strokes.getX(1002));
+		Assert.assertEquals(-999f, strokes.getY(1002));
+
+		final float[] points = strokes.getPoints();
+		strokes.clear();
+		Assert.assertTrue(strokes.isEmpty());
+		Assert.assertEquals(0, strokes.getStrokesNumber());
+		strokes.startStroke(7, 8);
+		Assert.assertSame(points, strokes.getPoints());
+		Assert.assertEquals(1, strokes.getStrokePointsNumber(0));
+	}
+
+	@Test
+	public void testRasterize() {
+		final StrokeBuffer strokes = new StrokeBuffer();
+		strokes.startStroke(1, 1);
+		strokes.addPoint(4, 1);
+		strokes.addPoint(4, 5);
+		strokes.startStroke(0, 5);
+		strokes.addPoint(3, 5);
+
+		final StrokeRasterizer expectedRasterizer = new StrokeRasterizer(6, 6);
+		expectedRasterizer.drawLine(1, 1, 4, 1);
+		expectedRasterizer.drawLine(4, 1, 4, 5);
+		expectedRasterizer.drawLine(0, 5, 3, 5);
+		final StrokeRasterizer actualRasterizer = new StrokeRasterizer(6, 6);
+		strokes.rasterize(actualRasterizer);
+
+		for (int i = 0; i < 6 * 6; i++) {
+			Assert.assertEquals(expectedRasterizer.getGrid()[i], actualRasterizer.getGrid()[i], 0);
+		}
+	}
+}
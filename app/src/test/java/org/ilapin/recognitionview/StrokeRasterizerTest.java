@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.raster.PixelEncoder;
+import org.ilapin.raster.StrokeBuffer;
+import org.ilapin.raster.StrokeRasterizer;
+import org.junit.Test;
+
+/**
+ * Expected hairline grids follow the pixels Skia's non anti-aliased hairline fills for the same lines,
+ * '#' standing for an inked pixel.
+ */
+public class StrokeRasterizerTest {
+	@Test
+	public void testHairlines() {
+		final StrokeRasterizer rasterizer = new StrokeRasterizer(8, 6);
+
+		// from the center of pixel 0 to the center of pixel 5, Skia rounds both ends up
+		rasterizer.drawLine(0.5f, 2.5f, 5.5f, 2.5f);
+		// mostly vertical, end point left out
+		rasterizer.drawLine(7.2f, 1, 7.2f, 4);
+		assertGrid(rasterizer,
+				"........",
+				".......#",
+				".#####.#",
+				".......#",
+				"........",
+				"........"
+		);
+	}
+
+	@Test
+	public void testSlopes() {
+		final StrokeRasterizer rasterizer = new StrokeRasterizer(8, 6);
+
+		// shallow slope, y sampled at pixel centers
+		rasterizer.drawLine(0, 0, 6, 2);
+		// exact diagonal goes along y, drawn right to left
+		rasterizer.drawLine(7, 5, 4, 2);
+		assertGrid(rasterizer,
+				"###.....",
+				"...###..",
+				"....#...",
+				".....#..",
+				"......#.",
+				"........"
+		);
+	}
+
+	@Test
+	public void testStrokeAndScale() {
+		final StrokeRasterizer rasterizer = new StrokeRasterizer(6, 6, PixelEncoder.Orientation.ROW_MAJOR);
+		rasterizer.setScale(0.1f, 0.1f);
+
+		// polyline in a 60x60 view, joints are drawn once by the segment starting there
+		rasterizer.drawStroke(new float[] {10, 10, 40, 10, 40, 50}, 0, 3);
+		// a tap has no length and leaves no trace
+		rasterizer.drawStroke(new float[] {20, 40}, 0, 1);
+		assertGrid(rasterizer,
+				"......",
+				".####.",
+				"....#.",
+				"....#.",
+				"....#.",
+				"......"
+		);
+
+		rasterizer.clear();
+		assertGrid(rasterizer,
+				"......",
+				"......",
+				"......",
+				"......",
+				"......",
+				"......"
+		);
+	}
+
+	@Test
+	public void testIncrementalDrawing() {
+		// strokes in a 280x280 view: a polyline, one crossing it twice, a tap and one retracing the first
+		// backwards across the others
+		final float[][] strokes = {
+				{31, 27, 142, 55, 209, 224, 44, 263},
+				{20, 180, 250, 60, 240, 250, 100, 10},
+				{150, 150},
+				{44, 263, 209, 224, 142, 55, 31, 27, 260, 270},
+		};
+
+		for (final float strokeWidth : new float[] {0, 1.5f}) {
+			final StrokeBuffer strokeBuffer = new StrokeBuffer();
+			final StrokeRasterizer incrementalRasterizer = new StrokeRasterizer(28, 28);
+			incrementalRasterizer.setScale(0.1f, 0.1f);
+			incrementalRasterizer.setStrokeWidth(strokeWidth);
+
+			// as the view does: the lone point on touch down, one segment per move event
+			for (final float[] stroke : strokes) {
+				strokeBuffer.startStroke(stroke[0], stroke[1]);
+				incrementalRasterizer.drawStroke(
+						strokeBuffer.getPoints(), (strokeBuffer.getPointsNumber() - 1) * 2, 1
+				);
+				for (int i = 2; i < stroke.length; i += 2) {
+					final int lastPoint = strokeBuffer.getPointsNumber() - 1;
+					incrementalRasterizer.drawLine(
+							strokeBuffer.getX(lastPoint), strokeBuffer.getY(lastPoint), stroke[i], stroke[i + 1]
+					);
+					strokeBuffer.addPoint(stroke[i], stroke[i + 1]);
+				}
+			}
+
+			final StrokeRasterizer fullRasterizer = new StrokeRasterizer(28, 28);
+			fullRasterizer.setScale(0.1f, 0.1f);
+			fullRasterizer.setStrokeWidth(strokeWidth);
+			strokeBuffer.rasterize(fullRasterizer);
+
+			int inkedPixels = 0;
+			for (int i = 0; i < 28 * 28; i++) {
+				Assert.assertEquals("width " + strokeWidth + ", pixel " + i,
+						fullRasterizer.getGrid()[i], incrementalRasterizer.getGrid()[i], 0);
+				if (fullRasterizer.getGrid()[i] > 0) {
+					inkedPixels++;
+				}
+			}
+			Assert.assertTrue(inkedPixels > 100);
+		}
+	}
+
+	@Test
+	public void testWideStroke() {
+		final StrokeRasterizer rasterizer = new StrokeRasterizer(8, 8);
+		rasterizer.setStrokeWidth(2);
+		rasterizer.drawLine(1, 4, 6, 4);
+
+		for (int x = 2; x < 6; x++) {
+			Assert.assertEquals(0, get(rasterizer, x, 2), 0);
+			Assert.assertEquals(StrokeRasterizer.INK, get(rasterizer, x, 3), 0);
+			Assert.assertEquals(StrokeRasterizer.INK, get(rasterizer, x, 4), 0);
+			Assert.assertEquals(0, get(rasterizer, x, 5), 0);
+		}
+		// round cap, partially covered
+		final double capCoverage = get(rasterizer, 0, 3) / StrokeRasterizer.INK;
+		Assert.assertEquals(1.5 - Math.sqrt(0.5 * 0.5 + 0.5 * 0.5), capCoverage, 1e-6);
+
+		rasterizer.clear();
+		rasterizer.drawStroke(new float[] {4, 4}, 0, 1);
+		Assert.assertTrue(get(rasterizer, 3, 3) > 0);
+	}
+
+	private static double get(final StrokeRasterizer rasterizer, final int x, final int y) {
+		final int index = rasterizer.getOrientation() == PixelEncoder.Orientation.COLUMN_MAJOR ?
+				x * rasterizer.getHeight() + y :
+				y * rasterizer.getWidth() + x;
+		return rasterizer.getGrid()[index];
+	}
+
+	private static void assertGrid(final StrokeRasterizer rasterizer, final String... rows) {
+		for (int y = 0; y < rows.length; y++) {
+			for (int x = 0; x < rows[y].length(); x++) {
+				final double expected = rows[y].charAt(x) == '#' ? StrokeRasterizer.INK : 0;
+				Assert.assertEquals("pixel " + x + ", " + y, expected, get(rasterizer, x, y), 0);
+			}
+		}
+	}
+}
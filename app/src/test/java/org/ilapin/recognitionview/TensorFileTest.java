@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import junit.framework.Assert;
+
+import org.ilapin.matrix.FloatMatrix;
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.TensorFile;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkLoader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class TensorFileTest {
+	@Test
+	public void testWriteAndMap() throws Exception {
+		final Matrix a = Matrix.fromArray(new double[][]{
+				{1, 2, 3},
+				{4, 5, 6},
+		});
+		final FloatMatrix b = FloatMatrix.fromMatrix(Matrix.fromArray(new double[][]{
+				{0.5},
+				{-0.25},
+		}));
+
+		final File file = File.createTempFile("tensors", null);
+		file.deleteOnExit();
+		new TensorFile.Writer().add("a", a).add("b", b).writeTo(file);
+
+		final TensorFile tensorFile = TensorFile.open(file);
+		Assert.assertTrue(tensorFile.verifyChecksum());
+		Assert.assertEquals(2, tensorFile.getTensors().size());
+
+		final TensorFile.Tensor tensorA = tensorFile.getTensor("a");
+		Assert.assertEquals(TensorFile.DATA_TYPE_FLOAT64, tensorA.getDataType());
+		Assert.assertEquals(6, tensorA.asDoubleBuffer().remaining());
+		Assert.assertEquals(6, tensorA.asDoubleBuffer().get(5), 0.00001);
+		final Matrix actualA = tensorA.toMatrix();
+		for (int i = 0; i < a.getRows(); i++) {
+			for (int j = 0; j < a.getColumns(); j++) {
+				Assert.assertEquals(a.get(i, j), actualA.get(i, j), 0.00001);
+			}
+		}
+
+		final TensorFile.Tensor tensorB = tensorFile.getTensor("b");
+		Assert.assertEquals(TensorFile.DATA_TYPE_FLOAT32, tensorB.getDataType());
+		Assert.assertEquals(2, tensorB.getRows());
+		Assert.assertEquals(1, tensorB.getColumns());
+		Assert.assertEquals(-0.25f, tensorB.toFloatMatrix().get(1, 0), 0.00001);
+	}
+
+	@Test
+	public void testCorruptionIsDetected() throws Exception {
+		final File file = File.createTempFile("tensors", null);
+		file.deleteOnExit();
+		new TensorFile.Writer().add("a", Matrix.fromArray(new double[][]{{1, 2, 3}})).writeTo(file);
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.seek(randomAccessFile.length() - 1);
+			randomAccessFile.write(0x7f);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		Assert.assertFalse(TensorFile.open(file, false).verifyChecksum());
+		try {
+			TensorFile.open(file);
+			Assert.fail("Corrupted file is opened");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBrokenHeaderIsRejected() throws Exception {
+		final File file = File.createTempFile("tensors", null);
+		file.deleteOnExit();
+		new TensorFile.Writer().add("a", Matrix.fromArray(new double[][]{{1, 2, 3}})).writeTo(file);
+		final byte[] bytes = new byte[(int) file.length()];
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			randomAccessFile.readFully(bytes);
+		} finally {
+			randomAccessFile.close();
+		}
+		final ByteBuffer original = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		TensorFile.wrap(original, true);
+		// magic, version, tensors number, checksum, name length and name, data type, layout, rows, columns
+		final int offsetPosition = 4 + 4 + 4 + 8 + 2 + 1 + 1 + 1 + 4 + 4;
+
+		final ByteBuffer truncated = original.duplicate();
+		truncated.limit(offsetPosition);
+		assertRejected(truncated.slice());
+
+		final ByteBuffer negativeOffset = copy(original);
+		negativeOffset.putLong(offsetPosition, -8);
+		assertRejected(negativeOffset);
+
+		final ByteBuffer offsetInHeader = copy(original);
+		offsetInHeader.putLong(offsetPosition, 0);
+		assertRejected(offsetInHeader);
+
+		final ByteBuffer emptyTensor = copy(original);
+		emptyTensor.putInt(offsetPosition - 8, 0);
+		emptyTensor.putLong(offsetPosition + 8, 0);
+		assertRejected(emptyTensor);
+
+		final ByteBuffer offsetPastEnd = copy(original);
+		offsetPastEnd.putLong(offsetPosition, original.limit() - 8);
+		assertRejected(offsetPastEnd);
+	}
+
+	private static ByteBuffer copy(final ByteBuffer buffer) {
+		final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+		copy.put(buffer.duplicate());
+		copy.flip();
+		return copy;
+	}
+
+	private static void assertRejected(final ByteBuffer buffer) {
+		try {
+			TensorFile.wrap(buffer, false);
+			Assert.fail("Broken tensor file is opened");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNetworkFromTensorFile() throws Exception {
+		final TensorFile.Writer writer = new TensorFile.Writer();
+		final Matrix inputBiases = TestNetworks.loadAsset(NeuralNetworkLoader.INPUT_BIASES);
+		final Matrix keep = TestNetworks.loadAsset(NeuralNetworkLoader.KEEP);
+		for (final String name : NeuralNetworkLoader.PARAMETER_NAMES) {
+			if (name.equals(NeuralNetworkLoader.INPUT_LAYER_WEIGHTS)) {
+				writer.add(name, TestNetworks.loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()));
+			} else {
+				writer.add(name, TestNetworks.loadAsset(name));
+			}
+		}
+		final File file = File.createTempFile("model", null);
+		file.deleteOnExit();
+		writer.writeTo(file);
+
+		final NeuralNetwork expectedNetwork = TestNetworks.loadNetwork();
+		final NeuralNetwork actualNetwork = NeuralNetworkLoader.load(TensorFile.open(file));
+		final Random random = new Random(9);
+		for (int n = 0; n < 10; n++) {
+			final double[] inputs = TestNetworks.randomInputs(random);
+			final double[] expectedResult = expectedNetwork.calculateOutputs(inputs);
+			final double[] actualResult = actualNetwork.calculateOutputs(inputs);
+			for (int i = 0; i < expectedResult.length; i++) {
+				Assert.assertEquals(expectedResult[i], actualResult[i], 0.00001);
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.recognitionview;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixLoader;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkLoader;
+import org.ilapin.neuralnetwork.graph.LayerGraph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Builds networks from the shipped assets. input_layer_weights is not always checked in, in that case
+ * seeded random weights of the same shape are used instead.
+ */
+class TestNetworks {
+
+	static final int IMAGE_SIZE = 28 * 28;
+
+	private static final File ASSETS_DIR = new File("src/main/assets");
+
+	static Matrix loadAsset(final String name) throws IOException {
+		return loadMatrix(new File(ASSETS_DIR, name));
+	}
+
+	/**
+	 * @return false if the trained input layer weights are not checked in and tests run on random ones
+	 */
+	static boolean hasInputLayerWeights() {
+		return new File(ASSETS_DIR, "input_layer_weights").exists();
+	}
+
+	static Matrix loadInputLayerWeights(final int rows, final int columns) throws IOException {
+		final File file = new File(ASSETS_DIR, "input_layer_weights");
+		if (file.exists()) {
+			return loadMatrix(file);
+		}
+
+		final Random random = new Random(1);
+		final Matrix weights = new Matrix(rows, columns);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				weights.set(i, j, random.nextGaussian() * 0.1);
+			}
+		}
+		return weights;
+	}
+
+	private static Matrix loadMatrix(final File file) throws IOException {
+		final FileInputStream inputStream = new FileInputStream(file);
+		try {
+			return MatrixLoader.loadMatrix(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	static NeuralNetwork loadNetwork() throws IOException {
+		final Matrix inputBiases = loadAsset("input_biases");
+		final Matrix keep = loadAsset("keep");
+
+		return NeuralNetworkLoader.create(
+				loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()),
+				loadAsset("layer_weights"),
+				inputBiases,
+				loadAsset("layer_biases"),
+				loadAsset("gain"),
+				keep,
+				loadAsset("xoffset")
+		);
+	}
+
+	static LayerGraph loadGraph() throws IOException {
+		final Matrix inputBiases = loadAsset("input_biases");
+		final Matrix keep = loadAsset("keep");
+
+		return NeuralNetworkLoader.createGraph(
+				loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()),
+				loadAsset("layer_weights"),
+				inputBiases,
+				loadAsset("layer_biases"),
+				loadAsset("gain"),
+				keep,
+				loadAsset("xoffset")
+		);
+	}
+
+	/**
+	 * Digit-like input: mostly blank with about a fifth of pixels inked.
+	 */
+	static double[] randomInputs(final Random random) {
+		final double[] inputs = new double[IMAGE_SIZE];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = random.nextInt(5) == 0 ? 0xff : 0;
+		}
+		return inputs;
+	}
+}
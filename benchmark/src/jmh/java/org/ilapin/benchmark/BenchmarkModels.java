@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.benchmark;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixLoader;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.NeuralNetworkLoader;
+import org.ilapin.neuralnetwork.graph.LayerGraph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Loads the model shipped with the app. The assets directory comes from the org.ilapin.benchmark.assets
+ * system property, set by the jmh task. input_layer_weights is not always checked in, in that case seeded
+ * random weights of the same shape are used instead.
+ */
+class BenchmarkModels {
+
+	static final int IMAGE_SIZE = 28 * 28;
+
+	static File getAssetsDirectory() {
+		return new File(System.getProperty("org.ilapin.benchmark.assets", "../app/src/main/assets"));
+	}
+
+	static File getAsset(final String name) {
+		return new File(getAssetsDirectory(), name);
+	}
+
+	static Matrix loadAsset(final String name) throws IOException {
+		return MatrixLoader.loadMatrixBulk(new FileInputStream(getAsset(name)));
+	}
+
+	/**
+	 * Asset file to feed straight into a loader. A missing input_layer_weights is replaced by a temporary
+	 * file of the same shape and format filled with the seeded random weights.
+	 */
+	static File getLoadableAsset(final String name) throws IOException {
+		final File file = getAsset(name);
+		if (file.exists() || !name.equals("input_layer_weights")) {
+			return file;
+		}
+
+		final Matrix keep = loadAsset("keep");
+		final Matrix weights = loadInputLayerWeights(loadAsset("input_biases").getRows(), keep.getColumns());
+		final File tempFile = File.createTempFile(name, null);
+		tempFile.deleteOnExit();
+		final DataOutputStream outputStream =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			outputStream.writeInt(weights.getRows());
+			outputStream.writeInt(weights.getColumns());
+			for (int j = 0; j < weights.getColumns(); j++) {
+				for (int i = 0; i < weights.getRows(); i++) {
+					outputStream.writeDouble(weights.get(i, j));
+				}
+			}
+		} finally {
+			outputStream.close();
+		}
+		return tempFile;
+	}
+
+	static Matrix loadInputLayerWeights(final int rows, final int columns) throws IOException {
+		final File file = getAsset("input_layer_weights");
+		if (file.exists()) {
+			return MatrixLoader.loadMatrixBulk(new FileInputStream(file));
+		}
+
+		return randomMatrix(new Random(1), rows, columns);
+	}
+
+	static NeuralNetwork loadNetwork() throws IOException {
+		final Matrix inputBiases = loadAsset("input_biases");
+		final Matrix keep = loadAsset("keep");
+
+		return NeuralNetworkLoader.create(
+				loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()),
+				loadAsset("layer_weights"),
+				inputBiases,
+				loadAsset("layer_biases"),
+				loadAsset("gain"),
+				keep,
+				loadAsset("xoffset")
+		);
+	}
+
+	/**
+	 * Builder preset with the model's parameters, for variants with other weights or storage.
+	 */
+	static NeuralNetwork.Builder loadNetworkBuilder() throws IOException {
+		final Matrix inputBiases = loadAsset("input_biases");
+		final Matrix keep = loadAsset("keep");
+		final int[] keepInputsIndexes = new int[keep.getColumns()];
+		for (int i = 0; i < keepInputsIndexes.length; i++) {
+			keepInputsIndexes[i] = (int) keep.get(0, i);
+		}
+
+		return new NeuralNetwork.Builder()
+				.setInputWeights(loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()))
+				.setInputBiases(inputBiases)
+				.setLayerWeights(loadAsset("layer_weights"))
+				.setLayerBiases(loadAsset("layer_biases"))
+				.setXOffset(loadAsset("xoffset"))
+				.setGain(loadAsset("gain"))
+				.setKeepInputsIndexes(keepInputsIndexes)
+				.setYMin(-1);
+	}
+
+	static LayerGraph loadGraph() throws IOException {
+		final Matrix inputBiases = loadAsset("input_biases");
+		final Matrix keep = loadAsset("keep");
+
+		return NeuralNetworkLoader.createGraph(
+				loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()),
+				loadAsset("layer_weights"),
+				inputBiases,
+				loadAsset("layer_biases"),
+				loadAsset("gain"),
+				keep,
+				loadAsset("xoffset")
+		);
+	}
+
+	static Matrix randomMatrix(final Random random, final int rows, final int columns) {
+		final Matrix matrix = new Matrix(rows, columns);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				matrix.set(i, j, random.nextGaussian() * 0.1);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Digit-like input: mostly blank with about a fifth of pixels inked.
+	 */
+	static double[] randomInputs(final Random random) {
+		final double[] inputs = new double[IMAGE_SIZE];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = random.nextInt(5) == 0 ? 0xff : 0;
+		}
+		return inputs;
+	}
+}
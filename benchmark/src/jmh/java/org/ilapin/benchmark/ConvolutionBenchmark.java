@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.benchmark;
+
+import org.ilapin.matrix.Vector;
+import org.ilapin.neuralnetwork.graph.ConvolutionStage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 3x3 convolutions of a small digit CNN, 1 to 8 channels on 28x28 and 8 to 8 channels on 14x14, with
+ * im2col + GEMM and with Winograd F(2x2, 3x3).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvolutionBenchmark {
+
+	@Param({"IM2COL", "WINOGRAD"})
+	public ConvolutionStage.Algorithm mAlgorithm;
+
+	private Layer mFirstLayer;
+	private Layer mSecondLayer;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(1);
+		mFirstLayer = new Layer(random, 1, 28, 8, mAlgorithm);
+		mSecondLayer = new Layer(random, 8, 14, 8, mAlgorithm);
+	}
+
+	@Benchmark
+	public double[] firstLayer() {
+		return mFirstLayer.calculate();
+	}
+
+	@Benchmark
+	public double[] secondLayer() {
+		return mSecondLayer.calculate();
+	}
+
+	private static class Layer {
+
+		final ConvolutionStage mStage;
+		final double[] mInputs;
+		final double[] mOutputs;
+		final double[] mScratch;
+
+		Layer(final Random random, final int channels, final int size, final int outputChannels,
+			  final ConvolutionStage.Algorithm algorithm) {
+			mStage = new ConvolutionStage(channels, size, size,
+					BenchmarkModels.randomMatrix(random, outputChannels, channels * 9), new Vector(outputChannels),
+					3, 1, 1, algorithm);
+			mInputs = BenchmarkModels.randomMatrix(random, 1, channels * size * size).row(0).toArray();
+			mOutputs = new double[mStage.getOutputsNumber(mInputs.length)];
+			mScratch = new double[mStage.getScratchSize(mInputs.length)];
+		}
+
+		double[] calculate() {
+			mStage.calculate(mInputs, mOutputs, mScratch);
+			return mOutputs;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.benchmark;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.Vector;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.WeightStorage;
+import org.ilapin.neuralnetwork.Workspace;
+import org.ilapin.neuralnetwork.graph.GraphPlan;
+import org.ilapin.neuralnetwork.graph.GraphWorkspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end scoring of digits. Run with the gc profiler (enabled by the jmh task) to see the allocation
+ * rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InferenceBenchmark {
+
+	private static final int BATCH_SIZE = 64;
+
+	private NeuralNetwork mNeuralNetwork;
+	private Workspace mWorkspace;
+	private NeuralNetwork mSparseInputsNeuralNetwork;
+	private Workspace mSparseInputsWorkspace;
+	private GraphPlan mGraphPlan;
+	private GraphWorkspace mGraphWorkspace;
+	private double[] mInputs;
+	private double[] mOutputs;
+	private Matrix mBatchInputs;
+	private Matrix mBatchOutputs;
+
+	@Setup
+	public void setUp() throws IOException {
+		final Random random = new Random(1);
+
+		mNeuralNetwork = BenchmarkModels.loadNetwork();
+		mWorkspace = mNeuralNetwork.createWorkspace();
+		mSparseInputsNeuralNetwork = BenchmarkModels.loadNetworkBuilder()
+				.setInputWeightsStorage(WeightStorage.SPARSE_INPUTS)
+				.build();
+		mSparseInputsWorkspace = mSparseInputsNeuralNetwork.createWorkspace();
+		mGraphPlan = BenchmarkModels.loadGraph().plan();
+		mGraphWorkspace = mGraphPlan.createWorkspace();
+		mInputs = BenchmarkModels.randomInputs(random);
+		mOutputs = new double[mNeuralNetwork.getOutputsNumber()];
+
+		mBatchInputs = new Matrix(BATCH_SIZE, BenchmarkModels.IMAGE_SIZE);
+		for (int n = 0; n < BATCH_SIZE; n++) {
+			new Vector(BenchmarkModels.randomInputs(random)).copyTo(mBatchInputs.row(n));
+		}
+		mBatchOutputs = new Matrix(BATCH_SIZE, mNeuralNetwork.getOutputsNumber());
+	}
+
+	@Benchmark
+	public double[] singleSample() {
+		return mNeuralNetwork.calculateOutputs(mInputs);
+	}
+
+	@Benchmark
+	public double[] singleSampleWorkspace() {
+		mNeuralNetwork.calculateOutputs(mInputs, mWorkspace, mOutputs);
+		return mOutputs;
+	}
+
+	/**
+	 * First layer accumulating only the weight columns of inked pixels.
+	 */
+	@Benchmark
+	public double[] singleSampleSparseInputs() {
+		mSparseInputsNeuralNetwork.calculateOutputs(mInputs, mSparseInputsWorkspace, mOutputs);
+		return mOutputs;
+	}
+
+	/**
+	 * The same network run by the generic layer graph engine.
+	 */
+	@Benchmark
+	public double[] singleSampleGraph() {
+		mGraphPlan.calculateOutputs(mInputs, mGraphWorkspace, mOutputs);
+		return mOutputs;
+	}
+
+	/**
+	 * One network shared by four threads, each scoring with its own thread-local workspace. Compare with
+	 * singleSampleWorkspace to see how throughput scales.
+	 */
+	@Benchmark
+	@Threads(4)
+	public double[] singleSampleShared(final SharedNetwork sharedNetwork) {
+		sharedNetwork.mNeuralNetwork.calculateOutputs(mInputs, mOutputs);
+		return mOutputs;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public Matrix batch() {
+		mNeuralNetwork.calculateOutputsBatch(mBatchInputs, mBatchOutputs);
+		return mBatchOutputs;
+	}
+
+	@State(Scope.Benchmark)
+	public static class SharedNetwork {
+
+		NeuralNetwork mNeuralNetwork;
+
+		@Setup
+		public void setUp() throws IOException {
+			mNeuralNetwork = BenchmarkModels.loadNetwork();
+		}
+	}
+}
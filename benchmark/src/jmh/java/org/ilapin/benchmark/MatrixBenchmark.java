@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.benchmark;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixUtils;
+import org.ilapin.matrix.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matrix operations at the shapes the digit network uses: the 784 x 717 input layer and the 10 x 784
+ * output layer, applied to one sample (GEMV) or to a batch of samples (GEMM).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+	@Param({"784x717", "10x784"})
+	public String mShape;
+
+	@Param({"64"})
+	public int mBatchSize;
+
+	private Matrix mWeights;
+	private Matrix mWeightsTransposed;
+	private Matrix mOther;
+	private Vector mX;
+	private Vector mY;
+	private Matrix mBatch;
+	private Matrix mBatchTransposed;
+	private Matrix mBatchResult;
+	private Matrix mBatchResultTransposed;
+
+	@Setup
+	public void setUp() {
+		final String[] dimensions = mShape.split("x");
+		final int rows = Integer.parseInt(dimensions[0]);
+		final int columns = Integer.parseInt(dimensions[1]);
+		final Random random = new Random(1);
+
+		mWeights = BenchmarkModels.randomMatrix(random, rows, columns);
+		mWeightsTransposed = MatrixUtils.matrixTranspose(mWeights);
+		mOther = BenchmarkModels.randomMatrix(random, rows, columns);
+		mX = new Vector(columns);
+		mY = new Vector(rows);
+		mBatch = BenchmarkModels.randomMatrix(random, mBatchSize, columns);
+		mBatchTransposed = MatrixUtils.matrixTranspose(mBatch);
+		mBatchResult = new Matrix(rows, mBatchSize);
+		mBatchResultTransposed = new Matrix(mBatchSize, rows);
+	}
+
+	@Benchmark
+	public Matrix sum() {
+		return MatrixUtils.matrixSum(mWeights, mOther);
+	}
+
+	@Benchmark
+	public Matrix transpose() {
+		return MatrixUtils.matrixTranspose(mWeights);
+	}
+
+	@Benchmark
+	public Vector matrixVectorMultiply() {
+		MatrixUtils.matrixVectorMultiply(mWeights, mX, mY);
+		return mY;
+	}
+
+	@Benchmark
+	public double[][] multiplyJagged() {
+		return MatrixUtils.matrixMultiply(mWeights.toArray(), mBatchTransposed.toArray());
+	}
+
+	@Benchmark
+	public Matrix multiplyNaive() {
+		MatrixUtils.matrixMultiply(mWeights, mBatchTransposed, mBatchResult);
+		return mBatchResult;
+	}
+
+	@Benchmark
+	public Matrix multiplyBlocked() {
+		MatrixUtils.matrixMultiplyBlocked(mWeights, mBatchTransposed, mBatchResult);
+		return mBatchResult;
+	}
+
+	@Benchmark
+	public Matrix multiplyTransposed() {
+		MatrixUtils.matrixMultiplyTransposed(mBatch, mWeights, mBatchResultTransposed);
+		return mBatchResultTransposed;
+	}
+
+	@Benchmark
+	public Matrix multiplyBlockedTransposedWeights() {
+		MatrixUtils.matrixMultiplyBlocked(mBatch, mWeightsTransposed, mBatchResultTransposed);
+		return mBatchResultTransposed;
+	}
+}
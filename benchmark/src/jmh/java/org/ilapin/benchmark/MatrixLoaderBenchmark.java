@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.benchmark;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.matrix.MatrixLoader;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the real model assets, one file at a time and as the whole network. The cold variants run
+ * each loader once per fresh JVM, the way the app pays for it on first recognition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixLoaderBenchmark {
+
+	@Param({"input_layer_weights", "layer_weights", "input_biases"})
+	public String mAsset;
+
+	private File mFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		mFile = BenchmarkModels.getLoadableAsset(mAsset);
+	}
+
+	@Benchmark
+	public double[][] load() throws IOException {
+		return MatrixLoader.load(new FileInputStream(mFile));
+	}
+
+	@Benchmark
+	public Matrix loadMatrix() throws IOException {
+		return MatrixLoader.loadMatrix(new FileInputStream(mFile));
+	}
+
+	@Benchmark
+	public Matrix loadMatrixBulk() throws IOException {
+		return MatrixLoader.loadMatrixBulk(new FileInputStream(mFile));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(5)
+	public Matrix loadMatrixCold() throws IOException {
+		return MatrixLoader.loadMatrix(new FileInputStream(mFile));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(5)
+	public Matrix loadMatrixBulkCold() throws IOException {
+		return MatrixLoader.loadMatrixBulk(new FileInputStream(mFile));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(5)
+	public NeuralNetwork loadNetworkCold() throws IOException {
+		return BenchmarkModels.loadNetwork();
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2016 Igor Lapin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.ilapin.benchmark;
+
+import org.ilapin.matrix.Matrix;
+import org.ilapin.neuralnetwork.MagnitudePruner;
+import org.ilapin.neuralnetwork.NeuralNetwork;
+import org.ilapin.neuralnetwork.WeightStorage;
+import org.ilapin.neuralnetwork.Workspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single digit scoring of a network pruned to the given sparsity, with its weights kept dense and in CSR.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseBenchmark {
+
+	@Param({"0.5", "0.8", "0.9"})
+	public double mSparsity;
+
+	private NeuralNetwork mDenseNeuralNetwork;
+	private NeuralNetwork mSparseNeuralNetwork;
+	private Workspace mDenseWorkspace;
+	private Workspace mSparseWorkspace;
+	private double[] mInputs;
+	private double[] mOutputs;
+
+	@Setup
+	public void setUp() throws IOException {
+		mDenseNeuralNetwork = buildNetwork(WeightStorage.DENSE);
+		mSparseNeuralNetwork = buildNetwork(WeightStorage.SPARSE);
+		mDenseWorkspace = mDenseNeuralNetwork.createWorkspace();
+		mSparseWorkspace = mSparseNeuralNetwork.createWorkspace();
+		mInputs = BenchmarkModels.randomInputs(new Random(1));
+		mOutputs = new double[mDenseNeuralNetwork.getOutputsNumber()];
+	}
+
+	@Benchmark
+	public double[] dense() {
+		mDenseNeuralNetwork.calculateOutputs(mInputs, mDenseWorkspace, mOutputs);
+		return mOutputs;
+	}
+
+	@Benchmark
+	public double[] sparse() {
+		mSparseNeuralNetwork.calculateOutputs(mInputs, mSparseWorkspace, mOutputs);
+		return mOutputs;
+	}
+
+	private NeuralNetwork buildNetwork(final WeightStorage storage) throws IOException {
+		final NeuralNetwork.Builder builder = BenchmarkModels.loadNetworkBuilder();
+		final Matrix inputBiases = BenchmarkModels.loadAsset("input_biases");
+		final Matrix keep = BenchmarkModels.loadAsset("keep");
+
+		return builder
+				.setInputWeights(MagnitudePruner.prune(
+						BenchmarkModels.loadInputLayerWeights(inputBiases.getRows(), keep.getColumns()), mSparsity
+				))
+				.setLayerWeights(MagnitudePruner.prune(BenchmarkModels.loadAsset("layer_weights"), mSparsity))
+				.setInputWeightsStorage(storage)
+				.setLayerWeightsStorage(storage)
+				.build();
+	}
+}